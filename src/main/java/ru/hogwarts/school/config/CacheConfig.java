@@ -0,0 +1,34 @@
+package ru.hogwarts.school.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@EnableCaching
+public class CacheConfig {
+    public static final String STUDENTS = "students";
+    public static final String FACULTIES = "faculties";
+    public static final String FACULTY_STUDENTS = "facultyStudents";
+    public static final String STUDENT_FACULTY = "studentFaculty";
+    public static final String FACULTY_SEARCH = "facultySearch";
+
+    @Bean
+    public CacheManager cacheManager(@Value("${entity.cache.max-size:10000}") long maxSize,
+                                     @Value("${entity.cache.expire-after-write-seconds:600}") long expireAfterWrite) {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager(STUDENTS, FACULTIES, FACULTY_STUDENTS, STUDENT_FACULTY,
+                FACULTY_SEARCH);
+        cacheManager.setAllowNullValues(false);
+        cacheManager.setCaffeine(Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(expireAfterWrite))
+                .recordStats());
+        return cacheManager;
+    }
+}
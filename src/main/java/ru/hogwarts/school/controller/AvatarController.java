@@ -1,51 +1,125 @@
 package ru.hogwarts.school.controller;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import ru.hogwarts.school.model.Avatar;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.hogwarts.school.dto.AvatarInfo;
+import ru.hogwarts.school.dto.AvatarMeta;
+import ru.hogwarts.school.dto.CacheStatistics;
+import ru.hogwarts.school.dto.CachedAvatar;
+import ru.hogwarts.school.dto.CursorPage;
+import ru.hogwarts.school.services.AvatarExportService;
 import ru.hogwarts.school.services.AvatarService;
+import ru.hogwarts.school.services.AvatarStreamService;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.*;
+import java.time.Duration;
 import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
 
 @RestController
 @RequestMapping("/avatar")
 public class AvatarController {
     public final AvatarService avatarService;
+    private final AvatarStreamService avatarStreamService;
+    private final AvatarExportService avatarExportService;
+    private final String cacheControl;
 
-    public AvatarController(AvatarService avatarService) {
+    public AvatarController(AvatarService avatarService, AvatarStreamService avatarStreamService,
+                            AvatarExportService avatarExportService,
+                            @Value("${avatar.cache-control.max-age-seconds:86400}") long maxAgeSeconds,
+                            @Value("${avatar.cache-control.public:true}") boolean cachePublic) {
         this.avatarService = avatarService;
+        this.avatarStreamService = avatarStreamService;
+        this.avatarExportService = avatarExportService;
+        CacheControl policy = maxAgeSeconds <= 0
+                ? CacheControl.noCache()
+                : CacheControl.maxAge(Duration.ofSeconds(maxAgeSeconds));
+        this.cacheControl = (cachePublic ? policy.cachePublic() : policy.cachePrivate()).getHeaderValue();
     }
 
-    @GetMapping("/from-disk/{id}")
-    public void fromDisk(@PathVariable Long id, HttpServletResponse response){
-        Avatar avatar=avatarService.getById(id);
-        response.setContentType(avatar.getMediaType());
-        response.setContentLength((int)avatar.getFileSize());
-        try(FileInputStream fis =new  FileInputStream(avatar.getFilePath())){
-            fis.transferTo(response.getOutputStream());
-        }catch (IOException e){
-            throw new RuntimeException(e);
+    @GetMapping({"/{id}", "/from-disk/{id}", "/from-db/{id}"})
+    public void getAvatar(@PathVariable Long id,
+                          @RequestParam(value = "size", required = false) Integer size,
+                          @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+                          WebRequest webRequest,
+                          HttpServletRequest request,
+                          HttpServletResponse response) {
+        CachedAvatar avatar;
+        try {
+            avatar = avatarService.getCached(id, size);
+        } catch (NoSuchElementException e) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        AvatarMeta meta = avatar.getMeta();
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        if (webRequest.checkNotModified(meta.getETag(), meta.getLastModifiedMillis())) {
+            return;
+        }
+        try {
+            if (avatar.hasData()) {
+                response.setContentType(meta.getMediaType());
+                response.setContentLength(avatar.getData().length);
+                response.getOutputStream().write(avatar.getData());
+                return;
+            }
+            String ifRange = webRequest.getHeader(HttpHeaders.IF_RANGE);
+            if (ifRange != null && !ifRange.equals(meta.getETag())) {
+                range = null;
+            }
+            avatarStreamService.stream(meta.getChecksum(), meta.getMediaType(), range, request, response);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
-    @GetMapping("/from-db/{id}")
-    public ResponseEntity<byte[]> fromDb(@PathVariable Long id){
-        Avatar avatar=avatarService.getById(id);
-        HttpHeaders headers=new HttpHeaders();
-        headers.setContentType(MediaType.parseMediaType(avatar.getMediaType()));
-        headers.setContentLength(avatar.getFileSize());
-        return ResponseEntity.status(200).headers(headers).body(avatar.getData());
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(value = "format", defaultValue = "zip") String format,
+                                                        @RequestParam(value = "facultyId", required = false) Long facultyId) {
+        AvatarExportService.Format archive;
+        try {
+            archive = AvatarExportService.Format.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        String fileName = (facultyId == null ? "avatars" : "avatars-faculty-" + facultyId) + "." + archive.getExtension();
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(archive.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(fileName).build().toString())
+                .body(out -> avatarExportService.export(facultyId, archive, out));
+    }
+
+    @GetMapping("/page")
+    public ResponseEntity<CursorPage<AvatarInfo>> getAvatarsPage(@RequestParam(required = false) String cursor,
+                                                                 @RequestParam(defaultValue = "50") int size) {
+        if (size < 1 || size > 1000) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.ok(avatarService.getAvatarsPage(cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/cache-stats")
+    public ResponseEntity<CacheStatistics> getCacheStatistics() {
+        return ResponseEntity.ok(avatarService.getCacheStatistics());
     }
 
     @GetMapping("/paginate")
-    public ResponseEntity<List<Avatar>> getAvatarsPaginated(@RequestParam ("page") Integer page ,@RequestParam ("size" )Integer size ) {
-        List<Avatar> avatarsPage = avatarService.findAvatarsPaginated(page,size);
+    public ResponseEntity<List<AvatarInfo>> getAvatarsPaginated(@RequestParam ("page") Integer page ,@RequestParam ("size" )Integer size ) {
+        List<AvatarInfo> avatarsPage = avatarService.findAvatarsPaginated(page,size);
         return ResponseEntity.ok(avatarsPage);
     }
 }
-
-
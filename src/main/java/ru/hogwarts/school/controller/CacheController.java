@@ -0,0 +1,46 @@
+package ru.hogwarts.school.controller;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.hogwarts.school.dto.CacheStatistics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RestController
+@RequestMapping("/cache")
+public class CacheController {
+
+    private final CacheManager cacheManager;
+
+    public CacheController(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    @GetMapping("/stats")
+    public ResponseEntity<List<CacheStatistics>> getCacheStatistics() {
+        List<CacheStatistics> statistics = new ArrayList<>();
+        for (String name : cacheManager.getCacheNames()) {
+            org.springframework.cache.Cache cache = cacheManager.getCache(name);
+            if (!(cache instanceof CaffeineCache)) {
+                continue;
+            }
+            Cache<Object, Object> nativeCache = ((CaffeineCache) cache).getNativeCache();
+            CacheStats stats = nativeCache.stats();
+            long size = nativeCache.estimatedSize();
+            // caches bounded by entry count weigh every entry as 1, the same unit Caffeine uses for evictionWeight
+            long weight = nativeCache.policy().eviction()
+                    .map(eviction -> eviction.weightedSize().orElse(size))
+                    .orElse(size);
+            statistics.add(new CacheStatistics(name, stats.hitCount(), stats.missCount(), stats.hitRate(),
+                    stats.evictionCount(), stats.evictionWeight(), size, weight));
+        }
+        return ResponseEntity.ok(statistics);
+    }
+}
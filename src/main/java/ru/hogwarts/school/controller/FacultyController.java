@@ -1,7 +1,11 @@
 package ru.hogwarts.school.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.hogwarts.school.dto.CursorPage;
+import ru.hogwarts.school.dto.FacultyDto;
 import ru.hogwarts.school.model.Faculty;
 import ru.hogwarts.school.services.FacultyService;
 
@@ -13,9 +17,11 @@ import java.util.Collections;
 public class FacultyController {
 
     private final FacultyService facultyService;
+    private final ObjectMapper objectMapper;
 
-    public FacultyController(FacultyService facultyService) {
+    public FacultyController(FacultyService facultyService, ObjectMapper objectMapper) {
         this.facultyService = facultyService;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping
@@ -24,7 +30,7 @@ public class FacultyController {
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<Faculty> findFaculty(@PathVariable Long id) {
+    public ResponseEntity<FacultyDto> findFaculty(@PathVariable Long id) {
         if (id == null) {
             return ResponseEntity.notFound().build();
         }
@@ -46,12 +52,35 @@ public class FacultyController {
     }
 
     @GetMapping
-    public ResponseEntity<Collection<Faculty>> getAllFaculty() {
+    public ResponseEntity<Collection<FacultyDto>> getAllFaculty() {
         return ResponseEntity.ok(facultyService.getAllFacul());
     }
 
+    @GetMapping(produces = NdjsonResponses.APPLICATION_NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamAllFaculties() {
+        return NdjsonResponses.stream(objectMapper.writerFor(Faculty.class), facultyService::forEachFacul);
+    }
+
+    @GetMapping(params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamAllFacultiesByFlag() {
+        return streamAllFaculties();
+    }
+
+    @GetMapping("/page")
+    public ResponseEntity<CursorPage<FacultyDto>> getFacultiesPage(@RequestParam(required = false) String cursor,
+                                                                   @RequestParam(defaultValue = "50") int size) {
+        if (size < 1 || size > 1000) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.ok(facultyService.getFacultiesPage(cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     @GetMapping("/color/{color}")
-    public ResponseEntity<Collection<Faculty>> getColorFaculty(@PathVariable String color) {
+    public ResponseEntity<Collection<FacultyDto>> getColorFaculty(@PathVariable String color) {
         if (color != null && !color.isBlank()) {
             return ResponseEntity.ok(facultyService.getFaculByColor(color));
         }
@@ -59,7 +88,7 @@ public class FacultyController {
     }
 
     @GetMapping("/search")
-    public ResponseEntity<Collection<Faculty>> getFacultyNameOrColorIgnoreCase(@RequestParam String searchString) {
+    public ResponseEntity<Collection<FacultyDto>> getFacultyNameOrColorIgnoreCase(@RequestParam String searchString) {
         if (searchString!=null&& !searchString.isBlank()) {
             return ResponseEntity.ok(facultyService.getFacultyNameOrColor(searchString));
         }
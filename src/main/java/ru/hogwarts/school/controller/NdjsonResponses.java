@@ -0,0 +1,40 @@
+package ru.hogwarts.school.controller;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+final class NdjsonResponses {
+    static final String APPLICATION_NDJSON = "application/x-ndjson";
+    private static final int FLUSH_EVERY = 100;
+
+    private NdjsonResponses() {
+    }
+
+    static <T> ResponseEntity<StreamingResponseBody> stream(ObjectWriter writer, Consumer<Consumer<T>> source) {
+        StreamingResponseBody body = out -> {
+            int[] written = {0};
+            source.accept(entity -> {
+                try {
+                    out.write(writer.writeValueAsBytes(entity));
+                    out.write('\n');
+                    // the first row goes out immediately, later ones in small batches
+                    if (++written[0] == 1 || written[0] % FLUSH_EVERY == 0) {
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.flush();
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(APPLICATION_NDJSON))
+                .body(body);
+    }
+}
@@ -1,29 +1,45 @@
 package ru.hogwarts.school.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.hogwarts.school.dto.AvatarUploadResult;
+import ru.hogwarts.school.dto.CursorPage;
+import ru.hogwarts.school.dto.StudentAgeStatistics;
+import ru.hogwarts.school.dto.StudentDto;
+import ru.hogwarts.school.dto.StudentImportReport;
 import ru.hogwarts.school.model.Faculty;
 import ru.hogwarts.school.model.Student;
 import ru.hogwarts.school.services.AvatarService;
+import ru.hogwarts.school.services.StudentImportService;
 import ru.hogwarts.school.services.StudentService;
 
+import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 @RestController
 @RequestMapping("/student")
 public class StudentController {
-
+    private static final int MAX_BULK_IDS = 10000;
 
     private final StudentService studentService;
     private final AvatarService avatarService;
+    private final StudentImportService studentImportService;
+    private final ObjectMapper objectMapper;
 
-    public StudentController(StudentService studentService, AvatarService avatarService) {
+    public StudentController(StudentService studentService, AvatarService avatarService,
+                             StudentImportService studentImportService, ObjectMapper objectMapper) {
         this.studentService = studentService;
         this.avatarService = avatarService;
+        this.studentImportService = studentImportService;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping
@@ -53,13 +69,64 @@ public class StudentController {
         return ResponseEntity.ok().build();
     }
 
+    @PostMapping("/bulk/delete")
+    public ResponseEntity<Integer> deleteStudents(@RequestBody List<Long> ids) {
+        if (ids.isEmpty() || ids.size() > MAX_BULK_IDS || ids.contains(null)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(studentService.deleteStudents(ids));
+    }
+
+    @DeleteMapping("/bulk/older-than")
+    public ResponseEntity<Integer> deleteStudentsOlderThan(@RequestParam int age) {
+        if (age < 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(studentService.deleteStudentsOlderThan(age));
+    }
+
+    @PutMapping("/bulk/faculty")
+    public ResponseEntity<Integer> assignFaculty(@RequestParam Long facultyId, @RequestBody List<Long> ids) {
+        if (ids.isEmpty() || ids.size() > MAX_BULK_IDS || ids.contains(null)) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.ok(studentService.assignFaculty(facultyId, ids));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
     @GetMapping
-    public ResponseEntity<Collection<Student>> getAllStudents() {
+    public ResponseEntity<Collection<StudentDto>> getAllStudents() {
         return ResponseEntity.ok(studentService.getAllStud());
     }
 
+    @GetMapping(produces = NdjsonResponses.APPLICATION_NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamAllStudents() {
+        return NdjsonResponses.stream(objectMapper.writerFor(Student.class), studentService::forEachStud);
+    }
+
+    @GetMapping(params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamAllStudentsByFlag() {
+        return streamAllStudents();
+    }
+
+    @GetMapping("/page")
+    public ResponseEntity<CursorPage<StudentDto>> getStudentsPage(@RequestParam(required = false) String cursor,
+                                                                  @RequestParam(defaultValue = "50") int size) {
+        if (size < 1 || size > 1000) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.ok(studentService.getStudentsPage(cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     @GetMapping("/age/{age}")
-    public ResponseEntity<Collection<Student>> getAllStudentsByAge(@PathVariable int age) {
+    public ResponseEntity<Collection<StudentDto>> getAllStudentsByAge(@PathVariable int age) {
         if (age > 0) {
             return ResponseEntity.ok(studentService.getStudByAge(age));
         }
@@ -67,8 +134,8 @@ public class StudentController {
     }
 
     @GetMapping("/age-between")
-    public ResponseEntity<Collection<Student>> getStudentsByAgeBetween(@RequestParam int minAge,
-                                                                       @RequestParam int maxAge) {
+    public ResponseEntity<Collection<StudentDto>> getStudentsByAgeBetween(@RequestParam int minAge,
+                                                                          @RequestParam int maxAge) {
         if (minAge > maxAge) {
             return ResponseEntity.badRequest().build();
         }
@@ -76,8 +143,17 @@ public class StudentController {
     }
 
 
+    @GetMapping("/search")
+    public ResponseEntity<List<StudentDto>> searchStudents(@RequestParam String query,
+                                                           @RequestParam(defaultValue = "10") int limit) {
+        if (query.isBlank() || limit < 1 || limit > 100) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(studentService.searchByName(query, limit));
+    }
+
     @GetMapping("/by-faculty")
-    public Collection<Student> getAllByFaculty(@RequestParam Long id) {
+    public Collection<StudentDto> getAllByFaculty(@RequestParam Long id) {
         return studentService.getByFacultyId(id);
     }
 
@@ -92,6 +168,28 @@ public class StudentController {
 
     }
 
+    @PostMapping(value = "/avatars", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<List<AvatarUploadResult>> saveBatch(MultipartHttpServletRequest request) {
+        return ResponseEntity.ok(avatarService.saveBatch(request.getMultiFileMap()));
+    }
+
+    @PostMapping(value = "/import", consumes = {"text/csv", NdjsonResponses.APPLICATION_NDJSON})
+    public ResponseEntity<StudentImportReport> importStudents(@RequestParam(value = "batchSize", required = false) Integer batchSize,
+                                                              HttpServletRequest request) throws IOException {
+        if (batchSize != null && (batchSize < 1 || batchSize > 10000)) {
+            return ResponseEntity.badRequest().build();
+        }
+        StudentImportService.Format format = MediaType.parseMediaType(request.getContentType())
+                .isCompatibleWith(MediaType.parseMediaType("text/csv"))
+                ? StudentImportService.Format.CSV
+                : StudentImportService.Format.NDJSON;
+        try {
+            return ResponseEntity.ok(studentImportService.importStudents(request.getInputStream(), format, batchSize));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     @GetMapping("/count")
     public ResponseEntity<Long> getCountOfStudents() {
         Long count = studentService.getCountOfStudents();
@@ -104,12 +202,25 @@ public class StudentController {
         return ResponseEntity.ok(averageAge);
     }
 
+    @GetMapping("/age-statistics")
+    public ResponseEntity<StudentAgeStatistics> getAgeStatistics() {
+        return ResponseEntity.ok(studentService.getAgeStatistics());
+    }
+
     @GetMapping("/last-five")
-    public ResponseEntity<List<Student>> findLastFiveStudents() {
-        List<Student> students = studentService.findLastFiveStudents();
+    public ResponseEntity<List<StudentDto>> findLastFiveStudents() {
+        List<StudentDto> students = studentService.findLastFiveStudents();
         return ResponseEntity.ok(students);
     }
 
+    @GetMapping("/recent")
+    public ResponseEntity<List<StudentDto>> findRecentStudents(@RequestParam(defaultValue = "5") int n) {
+        if (n < 1 || n > 100) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(studentService.findRecentStudents(n));
+    }
+
 
 }
 
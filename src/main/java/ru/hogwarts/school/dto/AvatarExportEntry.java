@@ -0,0 +1,60 @@
+package ru.hogwarts.school.dto;
+
+import ru.hogwarts.school.model.AvatarTier;
+
+import java.time.Instant;
+
+public class AvatarExportEntry {
+    private final Long id;
+    private final Long studentId;
+    private final String checksum;
+    private final String mediaType;
+    private final long fileSize;
+    private final Instant lastModified;
+    private final Long contentId;
+    private final AvatarTier tier;
+
+    public AvatarExportEntry(Long id, Long studentId, String checksum, String mediaType, long fileSize,
+                             Instant lastModified, Long contentId, AvatarTier tier) {
+        this.id = id;
+        this.studentId = studentId;
+        this.checksum = checksum;
+        this.mediaType = mediaType;
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.contentId = contentId;
+        this.tier = tier;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getStudentId() {
+        return studentId;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public Instant getLastModified() {
+        return lastModified;
+    }
+
+    public Long getContentId() {
+        return contentId;
+    }
+
+    public AvatarTier getTier() {
+        return tier;
+    }
+}
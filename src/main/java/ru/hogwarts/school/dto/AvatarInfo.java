@@ -0,0 +1,37 @@
+package ru.hogwarts.school.dto;
+
+public class AvatarInfo {
+    private final Long id;
+    private final long fileSize;
+    private final String mediaType;
+    private final Long studentId;
+    private final String url;
+
+    public AvatarInfo(Long id, long fileSize, String mediaType, Long studentId) {
+        this.id = id;
+        this.fileSize = fileSize;
+        this.mediaType = mediaType;
+        this.studentId = studentId;
+        this.url = "/avatar/" + id;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public Long getStudentId() {
+        return studentId;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+}
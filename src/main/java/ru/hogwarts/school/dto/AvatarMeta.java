@@ -0,0 +1,107 @@
+package ru.hogwarts.school.dto;
+
+import ru.hogwarts.school.model.AvatarTier;
+
+import java.time.Instant;
+
+public class AvatarMeta {
+    private final Long id;
+    private final String checksum;
+    private final Instant lastModified;
+    private final String mediaType;
+    private final long fileSize;
+    private final String filePath;
+    private final Integer variantSize;
+    private final AvatarTier tier;
+    private final String thumbnailChecksum;
+
+    public AvatarMeta(Long id, String checksum, Instant lastModified, String mediaType, long fileSize, String filePath) {
+        this(id, checksum, lastModified, mediaType, fileSize, filePath, null, null, null);
+    }
+
+    public AvatarMeta(Long id, String checksum, Instant lastModified, String mediaType, long fileSize, String filePath,
+                      AvatarTier tier) {
+        this(id, checksum, lastModified, mediaType, fileSize, filePath, null, tier, null);
+    }
+
+    public AvatarMeta(Long id, String checksum, Instant lastModified, String mediaType, long fileSize, String filePath,
+                      AvatarTier tier, String thumbnailChecksum) {
+        this(id, checksum, lastModified, mediaType, fileSize, filePath, null, tier, thumbnailChecksum);
+    }
+
+    public AvatarMeta(Long id, String checksum, Instant lastModified, String mediaType, long fileSize, String filePath,
+                      Integer variantSize) {
+        this(id, checksum, lastModified, mediaType, fileSize, filePath, variantSize, null, checksum);
+    }
+
+    private AvatarMeta(Long id, String checksum, Instant lastModified, String mediaType, long fileSize, String filePath,
+                       Integer variantSize, AvatarTier tier, String thumbnailChecksum) {
+        this.id = id;
+        this.checksum = checksum;
+        this.lastModified = lastModified;
+        this.mediaType = mediaType;
+        this.fileSize = fileSize;
+        this.filePath = filePath;
+        this.variantSize = variantSize;
+        this.tier = tier;
+        this.thumbnailChecksum = thumbnailChecksum;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public Instant getLastModified() {
+        return lastModified;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public Integer getVariantSize() {
+        return variantSize;
+    }
+
+    public AvatarTier getTier() {
+        return tier;
+    }
+
+    public boolean isInline() {
+        return tier == AvatarTier.DATABASE;
+    }
+
+    /**
+     * Whether thumbnails were generated for the current content, even if none were needed.
+     */
+    public boolean hasCurrentThumbnails() {
+        return checksum != null && checksum.equals(thumbnailChecksum);
+    }
+
+    public boolean isVariant() {
+        return variantSize != null;
+    }
+
+    public String getETag() {
+        if (checksum == null) {
+            return null;
+        }
+        return "\"" + checksum + (variantSize == null ? "" : "-" + variantSize) + "\"";
+    }
+
+    public long getLastModifiedMillis() {
+        return lastModified == null ? -1 : lastModified.toEpochMilli();
+    }
+}
@@ -0,0 +1,45 @@
+package ru.hogwarts.school.dto;
+
+public class AvatarUploadResult {
+    private final String part;
+    private final Long studentId;
+    private final Long avatarId;
+    private final boolean success;
+    private final String error;
+
+    private AvatarUploadResult(String part, Long studentId, Long avatarId, boolean success, String error) {
+        this.part = part;
+        this.studentId = studentId;
+        this.avatarId = avatarId;
+        this.success = success;
+        this.error = error;
+    }
+
+    public static AvatarUploadResult ok(String part, Long studentId, Long avatarId) {
+        return new AvatarUploadResult(part, studentId, avatarId, true, null);
+    }
+
+    public static AvatarUploadResult failed(String part, Long studentId, String error) {
+        return new AvatarUploadResult(part, studentId, null, false, error);
+    }
+
+    public String getPart() {
+        return part;
+    }
+
+    public Long getStudentId() {
+        return studentId;
+    }
+
+    public Long getAvatarId() {
+        return avatarId;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
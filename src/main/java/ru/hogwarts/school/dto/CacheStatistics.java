@@ -0,0 +1,56 @@
+package ru.hogwarts.school.dto;
+
+public class CacheStatistics {
+    private final String name;
+    private final long hits;
+    private final long misses;
+    private final double hitRate;
+    private final long evictions;
+    private final long evictedWeight;
+    private final long size;
+    private final long weight;
+
+    public CacheStatistics(String name, long hits, long misses, double hitRate,
+                           long evictions, long evictedWeight, long size, long weight) {
+        this.name = name;
+        this.hits = hits;
+        this.misses = misses;
+        this.hitRate = hitRate;
+        this.evictions = evictions;
+        this.evictedWeight = evictedWeight;
+        this.size = size;
+        this.weight = weight;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public double getHitRate() {
+        return hitRate;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getEvictedWeight() {
+        return evictedWeight;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getWeight() {
+        return weight;
+    }
+}
@@ -0,0 +1,31 @@
+package ru.hogwarts.school.dto;
+
+/**
+ * Validators and media type of an avatar, plus its bytes when they are served from memory; {@code data} is
+ * {@code null} for avatars streamed from storage.
+ */
+public class CachedAvatar {
+    private final AvatarMeta meta;
+    private final byte[] data;
+
+    public CachedAvatar(AvatarMeta meta, byte[] data) {
+        this.meta = meta;
+        this.data = data;
+    }
+
+    public AvatarMeta getMeta() {
+        return meta;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public boolean hasData() {
+        return data != null;
+    }
+
+    public int weight() {
+        return data == null ? 0 : data.length;
+    }
+}
@@ -0,0 +1,50 @@
+package ru.hogwarts.school.dto;
+
+import org.springframework.data.domain.Slice;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+public class CursorPage<T> {
+    private final List<T> items;
+    private final String next;
+
+    public CursorPage(List<T> items, String next) {
+        this.items = items;
+        this.next = next;
+    }
+
+    public static <T> CursorPage<T> of(Slice<T> slice, Function<T, Long> idExtractor) {
+        List<T> items = slice.getContent();
+        String next = slice.hasNext() && !items.isEmpty()
+                ? encode(idExtractor.apply(items.get(items.size() - 1)))
+                : null;
+        return new CursorPage<>(items, next);
+    }
+
+    public static String encode(long lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(("id:" + lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static long decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return 0L;
+        }
+        String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        if (!value.startsWith("id:")) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        return Long.parseLong(value.substring(3));
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public String getNext() {
+        return next;
+    }
+}
@@ -0,0 +1,31 @@
+package ru.hogwarts.school.dto;
+
+import ru.hogwarts.school.model.Faculty;
+
+public class FacultyDto {
+    private final Long id;
+    private final String name;
+    private final String color;
+
+    public FacultyDto(Long id, String name, String color) {
+        this.id = id;
+        this.name = name;
+        this.color = color;
+    }
+
+    public static FacultyDto of(Faculty faculty) {
+        return new FacultyDto(faculty.getId(), faculty.getName(), faculty.getColor());
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getColor() {
+        return color;
+    }
+}
@@ -0,0 +1,40 @@
+package ru.hogwarts.school.dto;
+
+import java.util.Map;
+
+public class StudentAgeStatistics {
+    private final long count;
+    private final Double averageAge;
+    private final Integer minAge;
+    private final Integer maxAge;
+    private final Map<Integer, Long> histogram;
+
+    public StudentAgeStatistics(long count, Double averageAge, Integer minAge, Integer maxAge,
+                                Map<Integer, Long> histogram) {
+        this.count = count;
+        this.averageAge = averageAge;
+        this.minAge = minAge;
+        this.maxAge = maxAge;
+        this.histogram = histogram;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public Double getAverageAge() {
+        return averageAge;
+    }
+
+    public Integer getMinAge() {
+        return minAge;
+    }
+
+    public Integer getMaxAge() {
+        return maxAge;
+    }
+
+    public Map<Integer, Long> getHistogram() {
+        return histogram;
+    }
+}
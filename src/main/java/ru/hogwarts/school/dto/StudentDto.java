@@ -0,0 +1,39 @@
+package ru.hogwarts.school.dto;
+
+public class StudentDto {
+    private final Long id;
+    private final String name;
+    private final int age;
+    private final FacultyDto faculty;
+
+    public StudentDto(Long id, String name, int age, FacultyDto faculty) {
+        this.id = id;
+        this.name = name;
+        this.age = age;
+        this.faculty = faculty;
+    }
+
+    /**
+     * Constructor expression target for queries that left join the faculty, whose columns are null
+     * for students without one.
+     */
+    public StudentDto(Long id, String name, int age, Long facultyId, String facultyName, String facultyColor) {
+        this(id, name, age, facultyId == null ? null : new FacultyDto(facultyId, facultyName, facultyColor));
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getAge() {
+        return age;
+    }
+
+    public FacultyDto getFaculty() {
+        return faculty;
+    }
+}
@@ -0,0 +1,64 @@
+package ru.hogwarts.school.dto;
+
+import java.util.List;
+
+public class StudentImportReport {
+    private final long rows;
+    private final long imported;
+    private final long failed;
+    private final long chunks;
+    private final long durationMillis;
+    private final List<RowError> errors;
+
+    public StudentImportReport(long rows, long imported, long failed, long chunks, long durationMillis,
+                               List<RowError> errors) {
+        this.rows = rows;
+        this.imported = imported;
+        this.failed = failed;
+        this.chunks = chunks;
+        this.durationMillis = durationMillis;
+        this.errors = errors;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getChunks() {
+        return chunks;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public List<RowError> getErrors() {
+        return errors;
+    }
+
+    public static class RowError {
+        private final long row;
+        private final String message;
+
+        public RowError(long row, String message) {
+            this.row = row;
+            this.message = message;
+        }
+
+        public long getRow() {
+            return row;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
@@ -1,19 +1,30 @@
 package ru.hogwarts.school.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import javax.persistence.*;
+import java.time.Instant;
 
 @Entity
 public class Avatar {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "avatar_seq")
+    @SequenceGenerator(name = "avatar_seq", sequenceName = "avatar_seq", allocationSize = 50)
     private Long id;
 
     private String filePath;
 
     private long fileSize;
     private String mediaType;
-    private byte[] data;
-    @OneToOne
+    private String checksum;
+    private Instant lastModified;
+    private String thumbnailChecksum;
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "content_id")
+    @JsonIgnore
+    private AvatarContent content;
+    @OneToOne(fetch = FetchType.LAZY)
+    @JsonIgnore
     private Student student;
 
 
@@ -50,12 +61,36 @@ public class Avatar {
         this.mediaType = mediaType;
     }
 
-    public byte[] getData() {
-        return data;
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public void setChecksum(String checksum) {
+        this.checksum = checksum;
+    }
+
+    public Instant getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(Instant lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public String getThumbnailChecksum() {
+        return thumbnailChecksum;
+    }
+
+    public void setThumbnailChecksum(String thumbnailChecksum) {
+        this.thumbnailChecksum = thumbnailChecksum;
+    }
+
+    public AvatarContent getContent() {
+        return content;
     }
 
-    public void setData(byte[] data) {
-        this.data = data;
+    public void setContent(AvatarContent content) {
+        this.content = content;
     }
 
     public Student getStudent() {
@@ -0,0 +1,79 @@
+package ru.hogwarts.school.model;
+
+import javax.persistence.*;
+
+@Entity
+public class AvatarContent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "avatar_content_seq")
+    @SequenceGenerator(name = "avatar_content_seq", sequenceName = "avatar_content_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(unique = true, nullable = false, length = 64)
+    private String hash;
+    private long size;
+    private int refCount;
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private AvatarTier tier;
+    @Basic(fetch = FetchType.LAZY)
+    @Column(columnDefinition = "bytea")
+    private byte[] data;
+
+    public AvatarContent() {
+    }
+
+    public AvatarContent(String hash, long size) {
+        this.hash = hash;
+        this.size = size;
+        this.refCount = 1;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public int getRefCount() {
+        return refCount;
+    }
+
+    public void setRefCount(int refCount) {
+        this.refCount = refCount;
+    }
+
+    public AvatarTier getTier() {
+        return tier;
+    }
+
+    public void setTier(AvatarTier tier) {
+        this.tier = tier;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public void setData(byte[] data) {
+        this.data = data;
+    }
+}
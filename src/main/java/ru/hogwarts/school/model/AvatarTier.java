@@ -0,0 +1,6 @@
+package ru.hogwarts.school.model;
+
+public enum AvatarTier {
+    DATABASE,
+    STORAGE
+}
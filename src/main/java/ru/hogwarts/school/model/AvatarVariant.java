@@ -0,0 +1,81 @@
+package ru.hogwarts.school.model;
+
+import javax.persistence.*;
+
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"avatar_id", "variant_size"}))
+public class AvatarVariant {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "avatar_variant_seq")
+    @SequenceGenerator(name = "avatar_variant_seq", sequenceName = "avatar_variant_seq", allocationSize = 50)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "avatar_id")
+    private Avatar avatar;
+
+    @Column(name = "variant_size")
+    private int size;
+    private String mediaType;
+    private long fileSize;
+    private byte[] data;
+
+    public AvatarVariant() {
+    }
+
+    public AvatarVariant(Avatar avatar, int size, String mediaType, byte[] data) {
+        this.avatar = avatar;
+        this.size = size;
+        this.mediaType = mediaType;
+        this.fileSize = data.length;
+        this.data = data;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Avatar getAvatar() {
+        return avatar;
+    }
+
+    public void setAvatar(Avatar avatar) {
+        this.avatar = avatar;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public void setMediaType(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public void setData(byte[] data) {
+        this.data = data;
+    }
+}
@@ -1,18 +1,32 @@
 package ru.hogwarts.school.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import ru.hogwarts.school.services.FacultyChangeListener;
 
 import javax.persistence.*;
 import java.util.Collection;
+import java.util.Locale;
 import java.util.Objects;
 
 @Entity
+@EntityListeners(FacultyChangeListener.class)
+@Table(indexes = {
+        @Index(name = "faculty_name_key_idx", columnList = "name_key"),
+        @Index(name = "faculty_color_key_idx", columnList = "color_key")
+})
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 public class Faculty {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "faculty_seq")
+    @SequenceGenerator(name = "faculty_seq", sequenceName = "faculty_seq", allocationSize = 10)
     private Long id;
     private String name;
     private String color;
+    @Column(name = "name_key")
+    private String nameKey;
+    @Column(name = "color_key")
+    private String colorKey;
     @OneToMany(mappedBy = "faculty")
     @JsonIgnore
     private Collection<Student> students;
@@ -58,6 +72,20 @@ public class Faculty {
         this.color = color;
     }
 
+    /**
+     * Case-folds a name or color the way the lookup columns store it.
+     */
+    public static String normalize(String value) {
+        return value == null ? null : value.toLowerCase(Locale.ROOT);
+    }
+
+    @PrePersist
+    @PreUpdate
+    void updateLookupKeys() {
+        nameKey = normalize(name);
+        colorKey = normalize(color);
+    }
+
     @Override
     public boolean equals(Object o) {
 
@@ -1,17 +1,26 @@
 package ru.hogwarts.school.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import ru.hogwarts.school.services.StudentChangeListener;
+
 import javax.persistence.*;
 import java.util.Objects;
 
 @Entity
+@EntityListeners(StudentChangeListener.class)
+@NamedEntityGraph(name = Student.WITH_FACULTY, attributeNodes = @NamedAttributeNode("faculty"))
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 public class Student {
+    public static final String WITH_FACULTY = "Student.withFaculty";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "student_seq")
+    @SequenceGenerator(name = "student_seq", sequenceName = "student_seq", allocationSize = 50)
     private Long id;
     private String name;
     private int age;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "faculty_id")
     private Faculty faculty;
 
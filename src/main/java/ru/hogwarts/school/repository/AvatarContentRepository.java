@@ -0,0 +1,53 @@
+package ru.hogwarts.school.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import ru.hogwarts.school.model.AvatarContent;
+import ru.hogwarts.school.model.AvatarTier;
+
+import javax.persistence.LockModeType;
+import java.util.List;
+import java.util.Optional;
+
+public interface AvatarContentRepository extends JpaRepository<AvatarContent, Long> {
+
+    Optional<AvatarContent> findByHash(String hash);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM AvatarContent c WHERE c.id = :id")
+    Optional<AvatarContent> findForUpdate(@Param("id") Long id);
+
+    @Query("SELECT c.data FROM AvatarContent c WHERE c.id = :id")
+    byte[] findDataById(@Param("id") Long id);
+
+    @Query("SELECT c.id FROM AvatarContent c WHERE c.id > :lastId AND (c.tier IS NULL " +
+            "OR (c.tier = :inline AND c.size > :threshold) OR (c.tier <> :inline AND c.size <= :threshold)) ORDER BY c.id")
+    List<Long> findMisplaced(@Param("lastId") Long lastId, @Param("threshold") long threshold,
+                             @Param("inline") AvatarTier inline, Pageable pageable);
+
+    /**
+     * Inserts the content row or takes one more reference on it in a single statement, so concurrent uploads of the
+     * same bytes never race between the increment and the insert. PostgreSQL only.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO avatar_content (id, hash, size, ref_count, tier) " +
+            "VALUES (nextval('avatar_content_seq'), :hash, :size, 1, :tier) " +
+            "ON CONFLICT (hash) DO UPDATE SET ref_count = avatar_content.ref_count + 1", nativeQuery = true)
+    int upsertReference(@Param("hash") String hash, @Param("size") long size, @Param("tier") String tier);
+
+    @Modifying
+    @Query("UPDATE AvatarContent c SET c.refCount = c.refCount + 1 WHERE c.hash = :hash")
+    int incrementRefCount(@Param("hash") String hash);
+
+    @Modifying
+    @Query("UPDATE AvatarContent c SET c.refCount = c.refCount - 1 WHERE c.id = :id")
+    int decrementRefCount(@Param("id") Long id);
+
+    @Modifying
+    @Query("DELETE FROM AvatarContent c WHERE c.id = :id AND c.refCount <= 0")
+    int deleteUnreferenced(@Param("id") Long id);
+}
@@ -1,17 +1,74 @@
 package ru.hogwarts.school.repository;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import ru.hogwarts.school.dto.AvatarExportEntry;
+import ru.hogwarts.school.dto.AvatarInfo;
+import ru.hogwarts.school.dto.AvatarMeta;
 import ru.hogwarts.school.model.Avatar;
 import ru.hogwarts.school.model.Student;
 
-
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 
 public interface AvatarRepository extends JpaRepository<Avatar,Long> {
 
+    // uploads and thumbnail jobs lock the avatar row before touching its variants, so they cannot interleave
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
     Optional<Avatar> findFirstByStudent(Student student);
 
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<Avatar> findByStudentIdIn(Collection<Long> studentIds);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT a FROM Avatar a WHERE a.id = :id")
+    Optional<Avatar> findForUpdate(@Param("id") Long id);
+
     List<Avatar> findAll();
+
+    @Query("SELECT new ru.hogwarts.school.dto.AvatarInfo(a.id, a.fileSize, a.mediaType, a.student.id) " +
+            "FROM Avatar a ORDER BY a.id")
+    List<AvatarInfo> findAllInfo(Pageable pageable);
+
+    @Query("SELECT new ru.hogwarts.school.dto.AvatarInfo(a.id, a.fileSize, a.mediaType, a.student.id) " +
+            "FROM Avatar a WHERE a.id > :lastId ORDER BY a.id")
+    Slice<AvatarInfo> findInfoAfter(@Param("lastId") Long lastId, Pageable pageable);
+
+    @Query("SELECT a.id FROM Avatar a WHERE a.content IS NULL AND a.id > :lastId ORDER BY a.id")
+    List<Long> findLegacyIds(@Param("lastId") Long lastId, Pageable pageable);
+
+    @Query("SELECT new ru.hogwarts.school.dto.AvatarMeta(a.id, a.checksum, a.lastModified, a.mediaType, a.fileSize, a.filePath, c.tier, " +
+            "a.thumbnailChecksum) FROM Avatar a LEFT JOIN a.content c WHERE a.id = :id")
+    Optional<AvatarMeta> findMetaById(@Param("id") Long id);
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "100"))
+    @Query("SELECT new ru.hogwarts.school.dto.AvatarExportEntry(a.id, s.id, a.checksum, a.mediaType, a.fileSize, " +
+            "a.lastModified, c.id, c.tier) FROM Avatar a JOIN a.student s JOIN a.content c ORDER BY a.id")
+    Stream<AvatarExportEntry> streamExport();
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "100"))
+    @Query("SELECT new ru.hogwarts.school.dto.AvatarExportEntry(a.id, s.id, a.checksum, a.mediaType, a.fileSize, " +
+            "a.lastModified, c.id, c.tier) FROM Avatar a JOIN a.student s JOIN a.content c " +
+            "WHERE s.faculty.id = :facultyId ORDER BY a.id")
+    Stream<AvatarExportEntry> streamExportByFaculty(@Param("facultyId") Long facultyId);
+
+    @Query("SELECT a.id FROM Avatar a WHERE a.content.id = :contentId")
+    List<Long> findIdsByContentId(@Param("contentId") Long contentId);
+
+    @Modifying
+    @Query("UPDATE Avatar a SET a.filePath = :filePath WHERE a.content.id = :contentId")
+    int updateFilePath(@Param("contentId") Long contentId, @Param("filePath") String filePath);
 }
@@ -0,0 +1,25 @@
+package ru.hogwarts.school.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import ru.hogwarts.school.dto.AvatarMeta;
+import ru.hogwarts.school.model.AvatarVariant;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface AvatarVariantRepository extends JpaRepository<AvatarVariant, Long> {
+
+    Optional<AvatarVariant> findByAvatarIdAndSize(Long avatarId, int size);
+
+    @Query("SELECT new ru.hogwarts.school.dto.AvatarMeta(a.id, a.checksum, a.lastModified, v.mediaType, v.fileSize, a.filePath, v.size) " +
+            "FROM AvatarVariant v JOIN v.avatar a WHERE a.id = :avatarId AND v.size >= :size ORDER BY v.size ASC")
+    List<AvatarMeta> findMeta(@Param("avatarId") Long avatarId, @Param("size") int size, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM AvatarVariant v WHERE v.avatar.id = :avatarId")
+    void deleteByAvatarId(@Param("avatarId") Long avatarId);
+}
@@ -1,13 +1,41 @@
 package ru.hogwarts.school.repository;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import ru.hogwarts.school.dto.FacultyDto;
 import ru.hogwarts.school.model.Faculty;
 
-import java.util.Collection;
+import javax.persistence.QueryHint;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 public interface FacultyRepository extends JpaRepository<Faculty,Long> {
-    Collection<Faculty> getFacultiesByColor(String color);
+    String SELECT_DTO = "SELECT new ru.hogwarts.school.dto.FacultyDto(f.id, f.name, f.color) FROM Faculty f ";
+
+    @Query(SELECT_DTO + "ORDER BY f.id")
+    List<FacultyDto> findAllDtos();
+
+    @Query(SELECT_DTO + "WHERE f.colorKey = :colorKey ORDER BY f.id")
+    List<FacultyDto> findDtosByColorKey(@Param("colorKey") String colorKey);
+
+    @Query(SELECT_DTO + "WHERE f.nameKey = :key OR f.colorKey = :key ORDER BY f.id")
+    List<FacultyDto> findDtosByNameKeyOrColorKey(@Param("key") String key);
+
+    @Query(SELECT_DTO + "WHERE f.id > :lastId ORDER BY f.id")
+    Slice<FacultyDto> findDtosAfter(@Param("lastId") long lastId, Pageable pageable);
+
+    Optional<Faculty> findFirstByNameKey(String nameKey);
 
-    Collection<Faculty> getFacultyByNameIgnoreCaseOrColorIgnoreCase(String name, String color);
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true")})
+    @Query("SELECT f FROM Faculty f ORDER BY f.id")
+    Stream<Faculty> streamAll();
 
 }
\ No newline at end of file
@@ -1,19 +1,54 @@
 package ru.hogwarts.school.repository;
 
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import ru.hogwarts.school.dto.StudentDto;
+import ru.hogwarts.school.model.Faculty;
 import ru.hogwarts.school.model.Student;
 
+import javax.persistence.QueryHint;
 import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 public interface StudentRepository extends JpaRepository<Student, Long> {
+    String SELECT_DTO = "SELECT new ru.hogwarts.school.dto.StudentDto(s.id, s.name, s.age, f.id, f.name, f.color) " +
+            "FROM Student s LEFT JOIN s.faculty f ";
+
+    @Override
+    @EntityGraph(Student.WITH_FACULTY)
+    Optional<Student> findById(Long id);
+
+    @Query(SELECT_DTO + "ORDER BY s.id")
+    List<StudentDto> findAllDtos();
+
+    @Query(SELECT_DTO + "WHERE s.id IN :ids")
+    List<StudentDto> findDtosByIdIn(@Param("ids") Collection<Long> ids);
 
-    Collection<Student> getStudByAge(int age);
+    @Query(SELECT_DTO + "WHERE s.age BETWEEN :min AND :max ORDER BY s.age, s.id")
+    List<StudentDto> findDtosByAgeBetween(@Param("min") int min, @Param("max") int max);
 
-    Collection<Student> findStudByAgeBetween(int min, int max);
+    @Query(SELECT_DTO + "WHERE f.id = :facultyId ORDER BY s.id")
+    List<StudentDto> findDtosByFacultyId(@Param("facultyId") Long facultyId);
+
+    @Query(SELECT_DTO + "WHERE LOWER(s.name) LIKE :pattern ESCAPE '!' ORDER BY s.name, s.id")
+    List<StudentDto> findDtosByNameLike(@Param("pattern") String pattern, Pageable pageable);
+
+    @Query(SELECT_DTO + "WHERE s.id > :lastId ORDER BY s.id")
+    Slice<StudentDto> findDtosAfter(@Param("lastId") long lastId, Pageable pageable);
+
+    @Query(SELECT_DTO + "ORDER BY s.id DESC")
+    List<StudentDto> findLatestDtos(Pageable pageable);
 
     @Query("SELECT COUNT(s) FROM Student s")
     Long getCountOfStudents();
@@ -21,6 +56,33 @@ public interface StudentRepository extends JpaRepository<Student, Long> {
     @Query("SELECT AVG(s.age) FROM Student s")
     Double getAverageAgeOfStudents();
 
-    @Query("SELECT s FROM Student s ORDER BY s.id DESC")
-    Page<Student> findLastFiveStudents(Pageable pageable);
+    @Query("SELECT s.age, COUNT(s) FROM Student s GROUP BY s.age")
+    List<Object[]> countByAge();
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT s.id, s.age FROM Student s ORDER BY s.age, s.id")
+    Stream<Object[]> streamIdAndAge();
+
+
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true")})
+    @Query("SELECT s FROM Student s LEFT JOIN FETCH s.faculty ORDER BY s.id")
+    Stream<Student> streamAll();
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT s.id, s.name FROM Student s")
+    Stream<Object[]> streamIdAndName();
+
+    @Query("SELECT s.id, s.age FROM Student s WHERE s.id IN :ids")
+    List<Object[]> findIdAndAgeByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT s.id, s.age FROM Student s WHERE s.age > :age")
+    List<Object[]> findIdAndAgeByAgeGreaterThan(@Param("age") int age);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM Student s WHERE s.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Student s SET s.faculty = :faculty WHERE s.id IN :ids")
+    int assignFaculty(@Param("faculty") Faculty faculty, @Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,121 @@
+package ru.hogwarts.school.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.hogwarts.school.dto.CacheStatistics;
+import ru.hogwarts.school.dto.CachedAvatar;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+@Component
+public class AvatarCache {
+    private static final int ENTRY_OVERHEAD = 256;
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final Cache<Key, CachedAvatar> cache;
+    // bumped by every invalidation
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+    private final long maxEntryBytes;
+    private final int[] variantSizes;
+
+    public AvatarCache(@Value("${avatar.cache.max-bytes:67108864}") long maxBytes,
+                       @Value("${avatar.cache.max-entry-bytes:1048576}") long maxEntryBytes,
+                       @Value("${avatar.thumbnail.sizes:64,128,256}") int[] variantSizes) {
+        this.maxEntryBytes = maxEntryBytes;
+        this.variantSizes = variantSizes.clone();
+        Arrays.sort(this.variantSizes);
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Key key, CachedAvatar value) -> value.weight() + ENTRY_OVERHEAD)
+                .recordStats()
+                .build();
+    }
+
+    public Integer variantSize(Integer size) {
+        if (size == null) {
+            return null;
+        }
+        for (int variant : variantSizes) {
+            if (variant >= size) {
+                return variant;
+            }
+        }
+        return null;
+    }
+
+    public CachedAvatar getIfPresent(long avatarId, Integer size) {
+        return cache.getIfPresent(key(avatarId, size));
+    }
+
+    public long generation(long avatarId) {
+        return generations.get(stripe(avatarId));
+    }
+
+    /**
+     * Caches an avatar loaded under {@code generation}, unless it was invalidated since.
+     */
+    public void put(long avatarId, Integer size, CachedAvatar avatar, long generation) {
+        if (avatar.weight() > maxEntryBytes || generation(avatarId) != generation) {
+            return;
+        }
+        Key key = key(avatarId, size);
+        cache.put(key, avatar);
+        if (generation(avatarId) != generation) {
+            cache.asMap().remove(key, avatar);
+        }
+    }
+
+    public void invalidate(long avatarId) {
+        generations.incrementAndGet(stripe(avatarId));
+        cache.invalidate(new Key(avatarId, 0));
+        for (int size : variantSizes) {
+            cache.invalidate(new Key(avatarId, size));
+        }
+    }
+
+    private Key key(long avatarId, Integer size) {
+        Integer variant = variantSize(size);
+        return new Key(avatarId, variant == null ? 0 : variant);
+    }
+
+    private static int stripe(long avatarId) {
+        return Long.hashCode(avatarId) & (GENERATION_STRIPES - 1);
+    }
+
+    public CacheStatistics statistics() {
+        CacheStats stats = cache.stats();
+        long weight = cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L);
+        return new CacheStatistics("avatars", stats.hitCount(), stats.missCount(), stats.hitRate(),
+                stats.evictionCount(), stats.evictionWeight(), cache.estimatedSize(), weight);
+    }
+
+    private static final class Key {
+        private final long avatarId;
+        private final int size;
+
+        private Key(long avatarId, int size) {
+            this.avatarId = avatarId;
+            this.size = size;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return avatarId == key.avatarId && size == key.size;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(avatarId, size);
+        }
+    }
+}
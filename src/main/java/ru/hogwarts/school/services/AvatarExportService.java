@@ -0,0 +1,197 @@
+package ru.hogwarts.school.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.hogwarts.school.dto.AvatarExportEntry;
+import ru.hogwarts.school.model.AvatarTier;
+import ru.hogwarts.school.repository.AvatarContentRepository;
+import ru.hogwarts.school.repository.AvatarRepository;
+import ru.hogwarts.school.storage.AvatarStorage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+@Service
+public class AvatarExportService {
+    private static final Logger logger = LoggerFactory.getLogger(AvatarExportService.class);
+    private static final int TAR_BLOCK = 512;
+
+    public enum Format {
+        ZIP("application/zip", "zip"),
+        TAR("application/x-tar", "tar");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    private final AvatarRepository avatarRepository;
+    private final AvatarContentRepository avatarContentRepository;
+    private final AvatarStorage avatarStorage;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public AvatarExportService(AvatarRepository avatarRepository,
+                               AvatarContentRepository avatarContentRepository,
+                               AvatarStorage avatarStorage,
+                               PlatformTransactionManager transactionManager) {
+        this.avatarRepository = avatarRepository;
+        this.avatarContentRepository = avatarContentRepository;
+        this.avatarStorage = avatarStorage;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    public void export(Long facultyId, Format format, OutputStream out) {
+        readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<AvatarExportEntry> entries = facultyId == null
+                    ? avatarRepository.streamExport()
+                    : avatarRepository.streamExportByFaculty(facultyId)) {
+                if (format == Format.ZIP) {
+                    writeZip(entries.iterator(), out);
+                } else {
+                    writeTar(entries.iterator(), out);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private void writeZip(Iterator<AvatarExportEntry> entries, OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        // images are already compressed, deflating them again only burns CPU
+        zip.setLevel(Deflater.NO_COMPRESSION);
+        WritableByteChannel channel = Channels.newChannel(zip);
+        while (entries.hasNext()) {
+            AvatarExportEntry entry = entries.next();
+            Long size = contentSize(entry);
+            if (size == null) {
+                continue;
+            }
+            ZipEntry zipEntry = new ZipEntry(entryName(entry));
+            if (entry.getLastModified() != null) {
+                zipEntry.setTime(entry.getLastModified().toEpochMilli());
+            }
+            zip.putNextEntry(zipEntry);
+            copyContent(entry, size, zip, channel);
+            zip.closeEntry();
+        }
+        zip.finish();
+        zip.flush();
+    }
+
+    private void writeTar(Iterator<AvatarExportEntry> entries, OutputStream out) throws IOException {
+        WritableByteChannel channel = Channels.newChannel(out);
+        while (entries.hasNext()) {
+            AvatarExportEntry entry = entries.next();
+            Long size = contentSize(entry);
+            if (size == null) {
+                continue;
+            }
+            long mtime = entry.getLastModified() == null ? 0 : entry.getLastModified().getEpochSecond();
+            out.write(tarHeader(entryName(entry), size, mtime));
+            copyContent(entry, size, out, channel);
+            int padding = (int) ((TAR_BLOCK - size % TAR_BLOCK) % TAR_BLOCK);
+            out.write(new byte[padding]);
+        }
+        out.write(new byte[TAR_BLOCK * 2]);
+        out.flush();
+    }
+
+    private Long contentSize(AvatarExportEntry entry) {
+        if (entry.getTier() == AvatarTier.DATABASE) {
+            return entry.getFileSize();
+        }
+        try {
+            return avatarStorage.size(entry.getChecksum());
+        } catch (IOException e) {
+            logger.warn("Avatar {} is missing from storage and is left out of the export", entry.getId());
+            return null;
+        }
+    }
+
+    private void copyContent(AvatarExportEntry entry, long size, OutputStream out, WritableByteChannel channel)
+            throws IOException {
+        if (entry.getTier() != AvatarTier.DATABASE) {
+            avatarStorage.transferTo(entry.getChecksum(), 0, size, channel);
+            return;
+        }
+        byte[] data = avatarContentRepository.findDataById(entry.getContentId());
+        if (data == null || data.length < size) {
+            throw new IOException("Cannot read avatar " + entry.getId());
+        }
+        out.write(data, 0, (int) size);
+    }
+
+    private static String entryName(AvatarExportEntry entry) {
+        String extension = "bin";
+        try {
+            extension = MediaType.parseMediaType(entry.getMediaType()).getSubtype();
+        } catch (RuntimeException e) {
+            // unknown or missing media types keep the generic extension
+        }
+        return "student-" + entry.getStudentId() + "/avatar-" + entry.getId() + "." + extension;
+    }
+
+    private static byte[] tarHeader(String name, long size, long mtime) {
+        byte[] header = new byte[TAR_BLOCK];
+        put(header, 0, 100, name);
+        put(header, 100, 8, "0000644");
+        put(header, 108, 8, "0000000");
+        put(header, 116, 8, "0000000");
+        put(header, 124, 12, octal(size, 11));
+        put(header, 136, 12, octal(mtime, 11));
+        header[156] = '0';
+        put(header, 257, 6, "ustar");
+        put(header, 263, 2, "00");
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xFF;
+        }
+        put(header, 148, 8, octal(checksum, 6));
+        header[154] = 0;
+        header[155] = ' ';
+        return header;
+    }
+
+    private static void put(byte[] header, int offset, int length, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, header, offset, Math.min(bytes.length, length));
+    }
+
+    private static String octal(long value, int digits) {
+        StringBuilder octal = new StringBuilder(Long.toOctalString(value));
+        while (octal.length() < digits) {
+            octal.insert(0, '0');
+        }
+        return octal.toString();
+    }
+}
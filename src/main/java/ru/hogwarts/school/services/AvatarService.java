@@ -1,62 +1,616 @@
 package ru.hogwarts.school.services;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.domain.Page;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.MultiValueMap;
 import org.springframework.web.multipart.MultipartFile;
+import ru.hogwarts.school.dto.AvatarInfo;
+import ru.hogwarts.school.dto.AvatarMeta;
+import ru.hogwarts.school.dto.AvatarUploadResult;
+import ru.hogwarts.school.dto.CacheStatistics;
+import ru.hogwarts.school.dto.CachedAvatar;
+import ru.hogwarts.school.dto.CursorPage;
 import ru.hogwarts.school.model.Avatar;
+import ru.hogwarts.school.model.AvatarContent;
+import ru.hogwarts.school.model.AvatarTier;
+import ru.hogwarts.school.model.AvatarVariant;
 import ru.hogwarts.school.model.Student;
+import ru.hogwarts.school.repository.AvatarContentRepository;
 import ru.hogwarts.school.repository.AvatarRepository;
+import ru.hogwarts.school.repository.AvatarVariantRepository;
 import ru.hogwarts.school.repository.StudentRepository;
+import ru.hogwarts.school.storage.AvatarStorage;
 
 
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
-import java.util.List;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Service
 public class AvatarService {
+    private static final Logger logger = LoggerFactory.getLogger(AvatarService.class);
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int LEGACY_BATCH = 100;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
     private final AvatarRepository avatarRepository;
+    private final AvatarContentRepository avatarContentRepository;
     private final StudentRepository studentRepository;
+    private final AvatarVariantRepository avatarVariantRepository;
+    private final AvatarThumbnailService avatarThumbnailService;
+    private final AvatarCache avatarCache;
+    private final AvatarStorage avatarStorage;
+    private final AvatarTieringService avatarTieringService;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final TransactionTemplate completionTransaction;
+    private final ExecutorService batchExecutor;
+    private final int batchChunkSize;
+    private final boolean contentUpsert;
     @Value("${path.to.avatars.folder}")
     private Path avatarPath;
+    @PersistenceContext
+    private EntityManager entityManager;
 
-    public AvatarService(AvatarRepository avatarRepository, StudentRepository studentRepository) {
+    public AvatarService(AvatarRepository avatarRepository, AvatarContentRepository avatarContentRepository,
+                         StudentRepository studentRepository,
+                         AvatarVariantRepository avatarVariantRepository,
+                         AvatarThumbnailService avatarThumbnailService,
+                         AvatarCache avatarCache,
+                         AvatarStorage avatarStorage,
+                         AvatarTieringService avatarTieringService,
+                         PlatformTransactionManager transactionManager,
+                         @Value("${avatar.batch.threads:4}") int batchThreads,
+                         @Value("${avatar.batch.chunk-size:100}") int batchChunkSize,
+                         @Value("${spring.datasource.url:}") String datasourceUrl) {
         this.avatarRepository = avatarRepository;
+        this.avatarContentRepository = avatarContentRepository;
         this.studentRepository = studentRepository;
+        this.avatarVariantRepository = avatarVariantRepository;
+        this.avatarThumbnailService = avatarThumbnailService;
+        this.avatarCache = avatarCache;
+        this.avatarStorage = avatarStorage;
+        this.avatarTieringService = avatarTieringService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        // used from synchronization callbacks, where the finished transaction is still bound
+        this.completionTransaction = new TransactionTemplate(transactionManager);
+        this.completionTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.completionTransaction.setReadOnly(true);
+        this.batchExecutor = Executors.newFixedThreadPool(batchThreads);
+        this.batchChunkSize = batchChunkSize;
+        this.contentUpsert = datasourceUrl.startsWith("jdbc:postgresql:");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        batchExecutor.shutdown();
     }
 
     public Avatar getById(Long id) {
         return avatarRepository.findById(id).orElseThrow();
     }
 
+    public AvatarMeta getMeta(Long id, Integer size) {
+        if (size != null) {
+            List<AvatarMeta> variants = avatarVariantRepository.findMeta(id, size, PageRequest.of(0, 1));
+            if (!variants.isEmpty()) {
+                return variants.get(0);
+            }
+        }
+        AvatarMeta meta = avatarRepository.findMetaById(id)
+                .filter(found -> found.getChecksum() != null && found.getTier() != null)
+                .orElseThrow();
+        if (size != null && !meta.hasCurrentThumbnails()) {
+            avatarThumbnailService.regenerate(id, meta.getChecksum());
+        }
+        return meta;
+    }
+
+    public CachedAvatar getCached(Long id, Integer size) {
+        Integer variant = avatarCache.variantSize(size);
+        CachedAvatar cached = avatarCache.getIfPresent(id, variant);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = avatarCache.generation(id);
+        cached = readOnlyTransaction.execute(status -> {
+            AvatarMeta meta = getMeta(id, variant);
+            if (!meta.isVariant() && !meta.isInline()) {
+                return new CachedAvatar(meta, null);
+            }
+            byte[] data = meta.isVariant() ? getVariant(id, meta.getVariantSize()).getData() : readData(id);
+            return new CachedAvatar(meta, data);
+        });
+        AvatarMeta meta = cached.getMeta();
+        if (variant == null || meta.isVariant() || meta.hasCurrentThumbnails()) {
+            avatarCache.put(id, variant, cached, generation);
+        }
+        return cached;
+    }
+
+    public CacheStatistics getCacheStatistics() {
+        return avatarCache.statistics();
+    }
+
+    public AvatarVariant getVariant(Long avatarId, int size) {
+        return avatarVariantRepository.findByAvatarIdAndSize(avatarId, size).orElseThrow();
+    }
+
+    @Transactional(readOnly = true)
+    public byte[] readData(Long id) {
+        Avatar avatar = getById(id);
+        try {
+            return avatarTieringService.read(avatar.getContent());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read avatar " + avatar.getId(), e);
+        }
+    }
+
+    @Transactional
     public Long save(Long studentId, MultipartFile multipartFile) throws IOException {
-        Files.createDirectories(avatarPath);
-        int doIndex = multipartFile.getOriginalFilename().lastIndexOf(".");
-        String fileExtension = multipartFile.getOriginalFilename().substring(doIndex + 1);
-        Path path = avatarPath.resolve(studentId + "." + fileExtension);
-        byte[] data = multipartFile.getBytes();
-        Files.write(path, data, StandardOpenOption.CREATE);
+        StagedUpload upload = stage(studentId, multipartFile);
+        try {
+            Student studentReference =(studentRepository.getReferenceById(studentId));
+            Avatar avatar = avatarRepository.findFirstByStudent(studentReference).orElse(new Avatar());
+            if (upload.hash.equals(avatar.getChecksum())) {
+                return avatar.getId();
+            }
+            AvatarContent previous = avatar.getContent();
+            store(upload);
+            apply(avatar, studentReference, upload);
+            avatarRepository.saveAndFlush(avatar);
+            afterSave(avatar);
+            if (previous != null) {
+                releaseContent(previous);
+            }
+            return avatar.getId();
+        } finally {
+            Files.deleteIfExists(upload.tempFile);
+        }
+    }
 
-        Student studentReference =(studentRepository.getReferenceById(studentId));
-        Avatar avatar = avatarRepository.findFirstByStudent(studentReference).orElse(new Avatar());
-        avatar.setStudent(studentReference);
-        avatar.setMediaType(multipartFile.getContentType());
-        avatar.setFileSize(multipartFile.getSize());
-        avatar.setData(data);
-        avatar.setFilePath(path.toAbsolutePath().toString());
-        avatarRepository.save(avatar);
-        return avatar.getId();
+    public List<AvatarUploadResult> saveBatch(MultiValueMap<String, MultipartFile> parts) {
+        List<AvatarUploadResult> results = new ArrayList<>();
+        List<CompletableFuture<StagedUpload>> stagings = new ArrayList<>();
+        List<Integer> stagingIndexes = new ArrayList<>();
+        List<Long> stagingStudentIds = new ArrayList<>();
+        for (Map.Entry<String, List<MultipartFile>> part : parts.entrySet()) {
+            Long studentId = parseStudentId(part.getKey());
+            for (MultipartFile file : part.getValue()) {
+                int index = results.size();
+                if (studentId == null) {
+                    results.add(AvatarUploadResult.failed(part.getKey(), null, "Part name must be a student id"));
+                    continue;
+                }
+                results.add(null);
+                stagingIndexes.add(index);
+                stagingStudentIds.add(studentId);
+                stagings.add(CompletableFuture.supplyAsync(() -> stageAndStore(studentId, file, index), batchExecutor));
+            }
+        }
 
+        List<StagedUpload> staged = new ArrayList<>(stagings.size());
+        try {
+            for (int i = 0; i < stagings.size(); i++) {
+                try {
+                    staged.add(stagings.get(i).join());
+                } catch (CompletionException e) {
+                    Long studentId = stagingStudentIds.get(i);
+                    results.set(stagingIndexes.get(i),
+                            AvatarUploadResult.failed(String.valueOf(studentId), studentId, rootMessage(e)));
+                }
+            }
+            for (int from = 0; from < staged.size(); from += batchChunkSize) {
+                List<StagedUpload> chunk = staged.subList(from, Math.min(from + batchChunkSize, staged.size()));
+                try {
+                    transactionTemplate.executeWithoutResult(status -> persistChunk(chunk, results, false));
+                } catch (RuntimeException e) {
+                    for (StagedUpload upload : chunk) {
+                        try {
+                            transactionTemplate.executeWithoutResult(status -> persistChunk(List.of(upload), results, true));
+                        } catch (RuntimeException single) {
+                            results.set(upload.index, AvatarUploadResult.failed(String.valueOf(upload.studentId),
+                                    upload.studentId, rootMessage(single)));
+                        }
+                    }
+                }
+            }
+        } finally {
+            for (StagedUpload upload : staged) {
+                try {
+                    Files.deleteIfExists(upload.tempFile);
+                } catch (IOException e) {
+                    logger.warn("Cannot delete staged upload {}", upload.tempFile, e);
+                }
+            }
+        }
+        return results;
+    }
 
+    /**
+     * Moves avatars stored in the old {@code avatar.data} column or as files into {@link AvatarContent}.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateLegacyAvatars() {
+        boolean dataColumn = Boolean.TRUE.equals(readOnlyTransaction.execute(status -> hasLegacyDataColumn()));
+        long lastId = 0;
+        int migrated = 0;
+        List<Long> ids;
+        do {
+            ids = avatarRepository.findLegacyIds(lastId, PageRequest.of(0, LEGACY_BATCH));
+            for (Long id : ids) {
+                try {
+                    if (Boolean.TRUE.equals(transactionTemplate.execute(status -> migrateLegacy(id, dataColumn)))) {
+                        migrated++;
+                    }
+                } catch (RuntimeException e) {
+                    logger.warn("Cannot migrate legacy avatar {}", id, e);
+                }
+                lastId = id;
+            }
+        } while (ids.size() == LEGACY_BATCH);
+        if (migrated > 0) {
+            logger.info("Migrated {} legacy avatars to content-addressed storage", migrated);
+        }
     }
 
-    public List<Avatar> findAvatarsPaginated(Integer pageNumber,Integer pageSize ) {
+    public List<AvatarInfo> findAvatarsPaginated(Integer pageNumber,Integer pageSize ) {
         PageRequest pageRequest = PageRequest.of(pageNumber - 1, pageSize);
-        return avatarRepository.findAll(pageRequest).getContent();
+        return avatarRepository.findAllInfo(pageRequest);
+    }
+
+    public CursorPage<AvatarInfo> getAvatarsPage(String cursor, int size) {
+        long lastId = CursorPage.decode(cursor);
+        return CursorPage.of(avatarRepository.findInfoAfter(lastId, PageRequest.of(0, size)), AvatarInfo::getId);
+    }
+
+    private void persistChunk(List<StagedUpload> chunk, List<AvatarUploadResult> results, boolean discardOnRollback) {
+        Map<Long, StagedUpload> latest = new LinkedHashMap<>();
+        for (StagedUpload upload : chunk) {
+            latest.put(upload.studentId, upload);
+            if (discardOnRollback && upload.stored) {
+                afterRollback(() -> discardIfUnreferenced(upload.hash));
+            }
+        }
+        Set<Long> studentIds = latest.keySet();
+        Map<Long, Student> students = new HashMap<>();
+        for (Student student : studentRepository.findAllById(studentIds)) {
+            students.put(student.getId(), student);
+        }
+        Map<Long, Avatar> avatars = new HashMap<>();
+        for (Avatar avatar : avatarRepository.findByStudentIdIn(studentIds)) {
+            avatars.put(avatar.getStudent().getId(), avatar);
+        }
+
+        Set<Avatar> changed = new LinkedHashSet<>();
+        List<AvatarContent> released = new ArrayList<>();
+        List<StagedUpload> persisted = new ArrayList<>();
+        for (StagedUpload upload : latest.values()) {
+            String part = String.valueOf(upload.studentId);
+            Student student = students.get(upload.studentId);
+            if (student == null) {
+                results.set(upload.index, AvatarUploadResult.failed(part, upload.studentId, "Student not found"));
+                discardAfterCommit(upload);
+                continue;
+            }
+            Avatar avatar = avatars.computeIfAbsent(upload.studentId, id -> new Avatar());
+            if (upload.hash.equals(avatar.getChecksum())) {
+                persisted.add(upload);
+                continue;
+            }
+            if (avatar.getContent() != null) {
+                released.add(avatar.getContent());
+            }
+            apply(avatar, student, upload);
+            changed.add(avatar);
+            persisted.add(upload);
+        }
+        avatarRepository.saveAll(changed);
+        avatarRepository.flush();
+        for (Avatar avatar : changed) {
+            afterSave(avatar);
+        }
+        for (AvatarContent content : released) {
+            releaseContent(content);
+        }
+        for (StagedUpload upload : persisted) {
+            Avatar avatar = avatars.get(upload.studentId);
+            results.set(upload.index, AvatarUploadResult.ok(String.valueOf(upload.studentId), upload.studentId, avatar.getId()));
+        }
+        for (StagedUpload upload : chunk) {
+            StagedUpload winner = latest.get(upload.studentId);
+            if (winner != upload) {
+                results.set(upload.index, results.get(winner.index));
+                discardAfterCommit(upload);
+            }
+        }
+    }
+
+    private void discardAfterCommit(StagedUpload upload) {
+        if (upload.stored) {
+            String hash = upload.hash;
+            afterCommit(() -> discardIfUnreferenced(hash));
+        }
+    }
+
+    private StagedUpload stageAndStore(Long studentId, MultipartFile file, int index) {
+        try {
+            StagedUpload upload = stage(studentId, file);
+            upload.index = index;
+            try {
+                store(upload);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(upload.tempFile);
+                throw e;
+            }
+            return upload;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Long parseStudentId(String partName) {
+        try {
+            return Long.valueOf(partName);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private boolean migrateLegacy(Long id, boolean dataColumn) {
+        Avatar avatar = avatarRepository.findById(id).orElse(null);
+        if (avatar == null || avatar.getContent() != null) {
+            return false;
+        }
+        Path legacyFile = avatar.getFilePath() == null ? null : Path.of(avatar.getFilePath());
+        byte[] legacyData = dataColumn ? (byte[]) entityManager
+                .createNativeQuery("SELECT data FROM avatar WHERE id = :id")
+                .setParameter("id", id)
+                .getSingleResult() : null;
+        try {
+            StagedUpload upload;
+            if (legacyData != null) {
+                upload = stage(null, avatar.getMediaType(), new ByteArrayInputStream(legacyData));
+            } else if (legacyFile != null && Files.isRegularFile(legacyFile)) {
+                try (InputStream in = Files.newInputStream(legacyFile)) {
+                    upload = stage(null, avatar.getMediaType(), in);
+                }
+            } else {
+                logger.warn("Legacy avatar {} has neither stored bytes nor a file, it stays unavailable", id);
+                return false;
+            }
+            try {
+                store(upload);
+                apply(avatar, avatar.getStudent(), upload);
+                avatarRepository.saveAndFlush(avatar);
+                if (dataColumn) {
+                    entityManager.createNativeQuery("UPDATE avatar SET data = NULL WHERE id = :id")
+                            .setParameter("id", id)
+                            .executeUpdate();
+                }
+                afterSave(avatar);
+            } finally {
+                Files.deleteIfExists(upload.tempFile);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (legacyFile != null && !legacyFile.toString().equals(avatar.getFilePath())) {
+            afterCommit(() -> {
+                try {
+                    Files.deleteIfExists(legacyFile);
+                } catch (IOException e) {
+                    logger.warn("Cannot delete legacy avatar file {}", legacyFile, e);
+                }
+            });
+        }
+        return true;
+    }
+
+    private boolean hasLegacyDataColumn() {
+        Number columns = (Number) entityManager.createNativeQuery("SELECT COUNT(*) FROM information_schema.columns "
+                        + "WHERE LOWER(table_name) = 'avatar' AND LOWER(column_name) = 'data'")
+                .getSingleResult();
+        return columns.intValue() > 0;
+    }
+
+    private StagedUpload stage(Long studentId, MultipartFile multipartFile) throws IOException {
+        try (InputStream in = multipartFile.getInputStream()) {
+            return stage(studentId, multipartFile.getContentType(), in);
+        }
+    }
+
+    private StagedUpload stage(Long studentId, String mediaType, InputStream in) throws IOException {
+        Files.createDirectories(avatarPath);
+        MessageDigest digest = sha256();
+        Path tempFile = Files.createTempFile(avatarPath, (studentId == null ? "legacy" : studentId) + "-", ".upload");
+        try {
+            long size;
+            try (OutputStream out = Files.newOutputStream(tempFile)) {
+                size = copy(in, out, digest);
+            }
+            return new StagedUpload(studentId, mediaType, tempFile, toHex(digest.digest()), size,
+                    avatarTieringService.tierFor(size));
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+    }
+
+    private void store(StagedUpload upload) throws IOException {
+        if (upload.tier == AvatarTier.STORAGE && !avatarStorage.contains(upload.hash)) {
+            avatarStorage.store(upload.hash, upload.tempFile);
+            upload.stored = true;
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                String hash = upload.hash;
+                afterRollback(() -> discardIfUnreferenced(hash));
+            }
+        }
+    }
+
+    private void apply(Avatar avatar, Student student, StagedUpload upload) {
+        if (avatar.getId() != null) {
+            avatarVariantRepository.deleteByAvatarId(avatar.getId());
+        }
+        avatar.setStudent(student);
+        avatar.setMediaType(upload.mediaType);
+        avatar.setFileSize(upload.size);
+        avatar.setChecksum(upload.hash);
+        avatar.setLastModified(Instant.now());
+        AvatarContent content = acquireContent(upload);
+        avatar.setContent(content);
+        avatar.setFilePath(content.getTier() == AvatarTier.DATABASE ? null : avatarStorage.location(upload.hash));
+    }
+
+    private void afterSave(Avatar avatar) {
+        Long avatarId = avatar.getId();
+        avatarCache.invalidate(avatarId);
+        afterCommit(() -> avatarCache.invalidate(avatarId));
+        avatarThumbnailService.schedule(avatarId, avatar.getChecksum());
+    }
+
+    private AvatarContent acquireContent(StagedUpload upload) {
+        AvatarContent content;
+        if (contentUpsert) {
+            avatarContentRepository.upsertReference(upload.hash, upload.size, upload.tier.name());
+            content = avatarContentRepository.findByHash(upload.hash).orElseThrow();
+            entityManager.refresh(content);
+        } else if (avatarContentRepository.incrementRefCount(upload.hash) > 0) {
+            return avatarContentRepository.findByHash(upload.hash).orElseThrow();
+        } else {
+            content = new AvatarContent(upload.hash, upload.size);
+            content.setTier(upload.tier);
+        }
+        if (content.getTier() == AvatarTier.DATABASE && content.getData() == null) {
+            try {
+                content.setData(Files.readAllBytes(upload.tempFile));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return content.getId() == null ? avatarContentRepository.save(content) : content;
+    }
+
+    private void releaseContent(AvatarContent content) {
+        Long id = content.getId();
+        String hash = content.getHash();
+        boolean stored = content.getTier() != AvatarTier.DATABASE;
+        avatarContentRepository.decrementRefCount(id);
+        if (avatarContentRepository.deleteUnreferenced(id) > 0 && stored) {
+            afterCommit(() -> discardIfUnreferenced(hash));
+        }
+    }
+
+    private void discardIfUnreferenced(String hash) {
+        try {
+            boolean referenced = Boolean.TRUE.equals(completionTransaction.execute(status ->
+                    avatarContentRepository.findByHash(hash).isPresent()));
+            if (!referenced) {
+                avatarStorage.delete(hash);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Cannot delete avatar blob {}", hash, e);
+        }
+    }
+
+    private static String rootMessage(Throwable e) {
+        Throwable cause = e;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage() == null ? cause.getClass().getSimpleName() : cause.getMessage();
+    }
+
+    private static void afterCommit(Runnable action) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static void afterRollback(Runnable action) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    action.run();
+                }
+            }
+        });
+    }
+
+    private static long copy(InputStream in, OutputStream out, MessageDigest digest) throws IOException {
+        byte[] buffer = new byte[CHUNK_SIZE];
+        long total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+            digest.update(buffer, 0, read);
+            total += read;
+        }
+        return total;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    private static final class StagedUpload {
+        private final Long studentId;
+        private final String mediaType;
+        private final Path tempFile;
+        private final String hash;
+        private final long size;
+        private final AvatarTier tier;
+        private int index;
+        private boolean stored;
+
+        private StagedUpload(Long studentId, String mediaType, Path tempFile, String hash, long size, AvatarTier tier) {
+            this.studentId = studentId;
+            this.mediaType = mediaType;
+            this.tempFile = tempFile;
+            this.hash = hash;
+            this.size = size;
+            this.tier = tier;
+        }
     }
 }
@@ -0,0 +1,176 @@
+package ru.hogwarts.school.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import ru.hogwarts.school.storage.AvatarStorage;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+@Service
+public class AvatarStreamService {
+
+    private static final String CRLF = "\r\n";
+    // request attributes Tomcat's NIO connector reads to send a file region with sendfile after the servlet returns
+    static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final AvatarStorage avatarStorage;
+    private final long sendfileThreshold;
+
+    public AvatarStreamService(AvatarStorage avatarStorage,
+                               @Value("${avatar.sendfile.min-bytes:49152}") long sendfileThreshold) {
+        this.avatarStorage = avatarStorage;
+        this.sendfileThreshold = sendfileThreshold;
+    }
+
+    public void stream(String hash, String mediaType, String rangeHeader,
+                       HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long length = avatarStorage.size(hash);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        List<HttpRange> ranges = parseRanges(rangeHeader);
+        if (ranges.isEmpty()) {
+            response.setStatus(HttpStatus.OK.value());
+            response.setContentType(mediaType);
+            response.setContentLengthLong(length);
+            send(hash, 0, length, request, response);
+            return;
+        }
+
+        long[][] regions = toRegions(ranges, length);
+        if (regions == null) {
+            response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            response.setContentLength(0);
+            return;
+        }
+
+        response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+        if (regions.length == 1) {
+            long start = regions[0][0];
+            long end = regions[0][1];
+            response.setContentType(mediaType);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, contentRange(start, end, length));
+            response.setContentLengthLong(end - start + 1);
+            send(hash, start, end - start + 1, request, response);
+            return;
+        }
+
+        String boundary = UUID.randomUUID().toString().replace("-", "");
+        byte[][] partHeaders = new byte[regions.length][];
+        long contentLength = 0;
+        for (int i = 0; i < regions.length; i++) {
+            partHeaders[i] = partHeader(boundary, mediaType, regions[i][0], regions[i][1], length);
+            contentLength += partHeaders[i].length + regions[i][1] - regions[i][0] + 1;
+        }
+        byte[] closing = (CRLF + "--" + boundary + "--" + CRLF).getBytes(StandardCharsets.US_ASCII);
+        contentLength += closing.length;
+
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+        OutputStream out = response.getOutputStream();
+        for (int i = 0; i < regions.length; i++) {
+            out.write(partHeaders[i]);
+            transfer(hash, regions[i][0], regions[i][1] - regions[i][0] + 1, out);
+        }
+        out.write(closing);
+        out.flush();
+    }
+
+    private static List<HttpRange> parseRanges(String rangeHeader) {
+        if (rangeHeader == null || rangeHeader.isBlank()) {
+            return Collections.emptyList();
+        }
+        try {
+            return HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            // A malformed Range header is ignored and the full representation is sent.
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Resolves the satisfiable ranges and coalesces the ones that overlap or touch. Returns {@code null} when
+     * nothing is satisfiable, or when several ranges together ask for more bytes than the avatar has, which only
+     * serves to amplify the response.
+     */
+    static long[][] toRegions(List<HttpRange> ranges, long length) {
+        List<long[]> regions = new ArrayList<>(ranges.size());
+        long requested = 0;
+        for (HttpRange range : ranges) {
+            try {
+                long[] region = {range.getRangeStart(length), range.getRangeEnd(length)};
+                regions.add(region);
+                requested += region[1] - region[0] + 1;
+            } catch (IllegalArgumentException e) {
+                // unsatisfiable ranges are skipped, the rest are still served
+            }
+        }
+        if (regions.isEmpty() || (regions.size() > 1 && requested > length)) {
+            return null;
+        }
+        regions.sort(Comparator.comparingLong(region -> region[0]));
+        List<long[]> merged = new ArrayList<>(regions.size());
+        for (long[] region : regions) {
+            long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && region[0] <= last[1] + 1) {
+                last[1] = Math.max(last[1], region[1]);
+            } else {
+                merged.add(region);
+            }
+        }
+        return merged.toArray(new long[0][]);
+    }
+
+    private static byte[] partHeader(String boundary, String mediaType, long start, long end, long length) {
+        return (CRLF + "--" + boundary + CRLF
+                + HttpHeaders.CONTENT_TYPE + ": " + mediaType + CRLF
+                + HttpHeaders.CONTENT_RANGE + ": " + contentRange(start, end, length) + CRLF
+                + CRLF).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static String contentRange(long start, long end, long length) {
+        return "bytes " + start + "-" + end + "/" + length;
+    }
+
+    /**
+     * Hands a single region of a file-backed avatar to the container, which sends it with sendfile once the
+     * servlet returns. Everything else, including regions below {@code avatar.sendfile.min-bytes}, is copied
+     * through the response stream: {@link Channels#newChannel} wraps it in a channel that goes through a heap
+     * buffer, so that path is not zero-copy.
+     */
+    private void send(String hash, long position, long count, HttpServletRequest request,
+                      HttpServletResponse response) throws IOException {
+        Path file = count >= sendfileThreshold && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))
+                ? avatarStorage.file(hash)
+                : null;
+        if (file == null) {
+            transfer(hash, position, count, response.getOutputStream());
+            return;
+        }
+        request.setAttribute(SENDFILE_FILENAME, file.toString());
+        request.setAttribute(SENDFILE_START, position);
+        request.setAttribute(SENDFILE_END, position + count);
+    }
+
+    private void transfer(String hash, long position, long count, OutputStream out) throws IOException {
+        avatarStorage.transferTo(hash, position, count, Channels.newChannel(out));
+        out.flush();
+    }
+}
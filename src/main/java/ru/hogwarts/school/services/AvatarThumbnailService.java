@@ -0,0 +1,186 @@
+package ru.hogwarts.school.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.hogwarts.school.model.Avatar;
+import ru.hogwarts.school.model.AvatarVariant;
+import ru.hogwarts.school.repository.AvatarRepository;
+import ru.hogwarts.school.repository.AvatarVariantRepository;
+
+import javax.annotation.PreDestroy;
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Service
+public class AvatarThumbnailService {
+    private static final Logger logger = LoggerFactory.getLogger(AvatarThumbnailService.class);
+
+    private final AvatarRepository avatarRepository;
+    private final AvatarVariantRepository avatarVariantRepository;
+    private final AvatarCache avatarCache;
+    private final AvatarTieringService avatarTieringService;
+    private final TransactionTemplate transactionTemplate;
+    private final int[] sizes;
+    private final ThreadPoolExecutor executor;
+    private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+
+    public AvatarThumbnailService(AvatarRepository avatarRepository,
+                                  AvatarVariantRepository avatarVariantRepository,
+                                  AvatarCache avatarCache,
+                                  AvatarTieringService avatarTieringService,
+                                  PlatformTransactionManager transactionManager,
+                                  @Value("${avatar.thumbnail.sizes:64,128,256}") int[] sizes,
+                                  @Value("${avatar.thumbnail.threads:2}") int threads,
+                                  @Value("${avatar.thumbnail.queue-capacity:256}") int queueCapacity) {
+        this.avatarRepository = avatarRepository;
+        this.avatarVariantRepository = avatarVariantRepository;
+        this.avatarCache = avatarCache;
+        this.avatarTieringService = avatarTieringService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.sizes = sizes;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "avatar-thumbnail-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                // a full queue drops the job instead of resizing on the uploading thread, reads re-request it
+                (runnable, pool) -> {
+                    pending.remove(((Job) runnable).avatarId);
+                    logger.debug("Thumbnail queue is full, avatar {} is regenerated on a later read",
+                            ((Job) runnable).avatarId);
+                });
+    }
+
+    public void schedule(Long avatarId, String hash) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    submit(avatarId, hash);
+                }
+            });
+        } else {
+            submit(avatarId, hash);
+        }
+    }
+
+    /**
+     * Queues thumbnails for an avatar that is served without them, unless a job for it is already waiting.
+     */
+    public void regenerate(Long avatarId, String hash) {
+        if (pending.add(avatarId)) {
+            executor.execute(new Job(avatarId, hash));
+        }
+    }
+
+    private void submit(Long avatarId, String hash) {
+        pending.add(avatarId);
+        executor.execute(new Job(avatarId, hash));
+    }
+
+    void generate(Long avatarId, String hash) {
+        try {
+            List<AvatarVariant> variants = new ArrayList<>();
+            BufferedImage original;
+            try (InputStream in = avatarTieringService.open(hash)) {
+                original = ImageIO.read(in);
+            }
+            if (original == null) {
+                logger.warn("Avatar {} has an unsupported image format, thumbnails skipped", avatarId);
+            } else {
+                boolean alpha = original.getColorModel().hasAlpha();
+                String format = alpha ? "png" : "jpeg";
+                int longestSide = Math.max(original.getWidth(), original.getHeight());
+                for (int size : sizes) {
+                    if (size < longestSide) {
+                        variants.add(new AvatarVariant(null, size, "image/" + format,
+                                resize(original, size, alpha, format)));
+                    }
+                }
+            }
+
+            boolean applied = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+                Avatar avatar = avatarRepository.findForUpdate(avatarId).orElse(null);
+                if (avatar == null || !hash.equals(avatar.getChecksum())) {
+                    // a newer upload replaced the image this job was started for
+                    return false;
+                }
+                avatarVariantRepository.deleteByAvatarId(avatarId);
+                for (AvatarVariant variant : variants) {
+                    variant.setAvatar(avatar);
+                }
+                avatarVariantRepository.saveAll(variants);
+                avatar.setThumbnailChecksum(hash);
+                return true;
+            }));
+            if (applied) {
+                avatarCache.invalidate(avatarId);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Cannot generate thumbnails for avatar {}", avatarId, e);
+        }
+    }
+
+    private static byte[] resize(BufferedImage original, int size, boolean alpha, String format) throws IOException {
+        double scale = (double) size / Math.max(original.getWidth(), original.getHeight());
+        int width = Math.max(1, (int) Math.round(original.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(original.getHeight() * scale));
+
+        BufferedImage target = new BufferedImage(width, height,
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(original, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(target, format, out);
+        return out.toByteArray();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private final class Job implements Runnable {
+        private final Long avatarId;
+        private final String hash;
+
+        private Job(Long avatarId, String hash) {
+            this.avatarId = avatarId;
+            this.hash = hash;
+        }
+
+        @Override
+        public void run() {
+            pending.remove(avatarId);
+            generate(avatarId, hash);
+        }
+    }
+}
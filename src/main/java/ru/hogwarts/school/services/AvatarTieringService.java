@@ -0,0 +1,159 @@
+package ru.hogwarts.school.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.hogwarts.school.model.AvatarContent;
+import ru.hogwarts.school.model.AvatarTier;
+import ru.hogwarts.school.repository.AvatarContentRepository;
+import ru.hogwarts.school.repository.AvatarRepository;
+import ru.hogwarts.school.storage.AvatarStorage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+@Service
+public class AvatarTieringService {
+    private static final Logger logger = LoggerFactory.getLogger(AvatarTieringService.class);
+
+    private final AvatarContentRepository avatarContentRepository;
+    private final AvatarRepository avatarRepository;
+    private final AvatarStorage avatarStorage;
+    private final AvatarCache avatarCache;
+    private final TransactionTemplate transactionTemplate;
+    private final long inlineThreshold;
+    private final int migrationBatchSize;
+    private final Path tempDirectory;
+
+    public AvatarTieringService(AvatarContentRepository avatarContentRepository,
+                                AvatarRepository avatarRepository,
+                                AvatarStorage avatarStorage,
+                                AvatarCache avatarCache,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${avatar.tiering.inline-threshold-bytes:65536}") long inlineThreshold,
+                                @Value("${avatar.tiering.migration-batch-size:50}") int migrationBatchSize,
+                                @Value("${path.to.avatars.folder}") Path tempDirectory) {
+        this.avatarContentRepository = avatarContentRepository;
+        this.avatarRepository = avatarRepository;
+        this.avatarStorage = avatarStorage;
+        this.avatarCache = avatarCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.inlineThreshold = inlineThreshold;
+        this.migrationBatchSize = migrationBatchSize;
+        this.tempDirectory = tempDirectory;
+    }
+
+    public AvatarTier tierFor(long size) {
+        return size <= inlineThreshold ? AvatarTier.DATABASE : AvatarTier.STORAGE;
+    }
+
+    public InputStream open(String hash) throws IOException {
+        byte[] inline = transactionTemplate.execute(status -> avatarContentRepository.findByHash(hash)
+                .filter(content -> content.getTier() == AvatarTier.DATABASE)
+                .map(AvatarContent::getData)
+                .orElse(null));
+        return inline != null ? new ByteArrayInputStream(inline) : avatarStorage.open(hash);
+    }
+
+    public byte[] read(AvatarContent content) throws IOException {
+        if (content.getTier() == AvatarTier.STORAGE) {
+            try (InputStream in = avatarStorage.open(content.getHash())) {
+                return in.readAllBytes();
+            }
+        }
+        return content.getData();
+    }
+
+    @Scheduled(fixedDelayString = "${avatar.tiering.migration-interval-ms:300000}",
+            initialDelayString = "${avatar.tiering.migration-interval-ms:300000}")
+    public void migrate() {
+        long lastId = 0;
+        int moved = 0;
+        List<Long> ids;
+        do {
+            ids = avatarContentRepository.findMisplaced(lastId, inlineThreshold, AvatarTier.DATABASE,
+                    PageRequest.of(0, migrationBatchSize));
+            for (Long id : ids) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> moveTier(id));
+                    moved++;
+                } catch (RuntimeException e) {
+                    logger.warn("Cannot move avatar content {} between tiers", id, e);
+                }
+                lastId = id;
+            }
+        } while (ids.size() == migrationBatchSize);
+        if (moved > 0) {
+            logger.info("Moved {} avatar contents between tiers", moved);
+        }
+    }
+
+    private void moveTier(Long id) {
+        // the same row lock uploads and releases take, so the last release cannot delete the row mid-move
+        AvatarContent content = avatarContentRepository.findForUpdate(id).orElse(null);
+        if (content == null) {
+            return;
+        }
+        String hash = content.getHash();
+        AvatarTier target = tierFor(content.getSize());
+        if (content.getTier() == target) {
+            return;
+        }
+        List<Long> avatarIds = avatarRepository.findIdsByContentId(id);
+        avatarIds.forEach(avatarCache::invalidate);
+        afterCommit(() -> avatarIds.forEach(avatarCache::invalidate));
+        try {
+            if (target == AvatarTier.DATABASE) {
+                if (content.getTier() == AvatarTier.STORAGE) {
+                    content.setData(read(content));
+                }
+                content.setTier(AvatarTier.DATABASE);
+                avatarRepository.updateFilePath(id, null);
+                afterCommit(() -> {
+                    try {
+                        avatarStorage.delete(hash);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } else {
+                if (!avatarStorage.contains(hash)) {
+                    Files.createDirectories(tempDirectory);
+                    Path tempFile = Files.createTempFile(tempDirectory, hash, ".tier");
+                    try {
+                        Files.write(tempFile, content.getData());
+                        avatarStorage.store(hash, tempFile);
+                    } finally {
+                        Files.deleteIfExists(tempFile);
+                    }
+                }
+                content.setData(null);
+                content.setTier(AvatarTier.STORAGE);
+                avatarRepository.updateFilePath(id, avatarStorage.location(hash));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot move avatar content " + id, e);
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
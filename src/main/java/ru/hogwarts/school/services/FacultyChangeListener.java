@@ -0,0 +1,47 @@
+package ru.hogwarts.school.services;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.hogwarts.school.dto.FacultyDto;
+import ru.hogwarts.school.model.Faculty;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+public class FacultyChangeListener {
+
+    // resolved lazily: the listener is built together with the EntityManagerFactory the snapshot depends on
+    private final ObjectProvider<FacultySnapshot> facultySnapshot;
+
+    public FacultyChangeListener(ObjectProvider<FacultySnapshot> facultySnapshot) {
+        this.facultySnapshot = facultySnapshot;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void saved(Faculty faculty) {
+        FacultyDto dto = FacultyDto.of(faculty);
+        afterCommit(() -> facultySnapshot.getObject().put(dto));
+    }
+
+    @PostRemove
+    public void removed(Faculty faculty) {
+        long id = faculty.getId();
+        afterCommit(() -> facultySnapshot.getObject().remove(id));
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -1,54 +1,124 @@
 package ru.hogwarts.school.services;
 
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.hogwarts.school.config.CacheConfig;
+import ru.hogwarts.school.dto.CursorPage;
+import ru.hogwarts.school.dto.FacultyDto;
 import ru.hogwarts.school.model.Faculty;
 import ru.hogwarts.school.model.Student;
+import ru.hogwarts.school.repository.EntityStreamer;
 import ru.hogwarts.school.repository.FacultyRepository;
 import ru.hogwarts.school.repository.StudentRepository;
 
 import java.util.Collection;
 import java.util.NoSuchElementException;
+import java.util.function.Consumer;
 
 @Service
 public class FacultyService {
 
     private final FacultyRepository facultyRepository;
     private final StudentRepository studentRepository;
+    private final EntityStreamer entityStreamer;
+    private final FacultySnapshot facultySnapshot;
 
-    public FacultyService(FacultyRepository facultyRepository, StudentRepository studentRepository) {
+    public FacultyService(FacultyRepository facultyRepository, StudentRepository studentRepository,
+                          EntityStreamer entityStreamer, FacultySnapshot facultySnapshot) {
         this.facultyRepository = facultyRepository;
         this.studentRepository = studentRepository;
+        this.entityStreamer = entityStreamer;
+        this.facultySnapshot = facultySnapshot;
     }
 
+    @CacheEvict(cacheNames = CacheConfig.FACULTY_SEARCH, allEntries = true)
     public Faculty createFacul(Faculty faculty) {
         return facultyRepository.save(faculty);
     }
 
-    public Faculty findFacul(Long id) {
+    @Cacheable(cacheNames = CacheConfig.FACULTIES, key = "#id", condition = "!@facultySnapshot.enabled")
+    public FacultyDto findFacul(Long id) {
+        FacultySnapshot.Snapshot snapshot = facultySnapshot.current();
+        if (snapshot != null) {
+            FacultyDto faculty = snapshot.byId(id);
+            if (faculty == null) {
+                throw new NoSuchElementException();
+            }
+            return faculty;
+        }
         return facultyRepository.findById(id)
+                .map(FacultyDto::of)
                 .orElseThrow(NoSuchElementException::new);
     }
 
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.FACULTIES, key = "#faculty.id", condition = "#faculty.id != null"),
+            @CacheEvict(cacheNames = CacheConfig.FACULTY_STUDENTS, key = "#faculty.id", condition = "#faculty.id != null"),
+            @CacheEvict(cacheNames = CacheConfig.FACULTY_SEARCH, allEntries = true),
+            @CacheEvict(cacheNames = CacheConfig.STUDENTS, allEntries = true),
+            @CacheEvict(cacheNames = CacheConfig.STUDENT_FACULTY, allEntries = true)
+    })
     public Faculty editFacul(Faculty faculty) {
         return facultyRepository.save(faculty);
     }
 
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.FACULTIES, key = "#id"),
+            @CacheEvict(cacheNames = CacheConfig.FACULTY_STUDENTS, key = "#id"),
+            @CacheEvict(cacheNames = CacheConfig.FACULTY_SEARCH, allEntries = true),
+            @CacheEvict(cacheNames = CacheConfig.STUDENTS, allEntries = true),
+            @CacheEvict(cacheNames = CacheConfig.STUDENT_FACULTY, allEntries = true)
+    })
     public void deleteFacul(Long id) {
         facultyRepository.deleteById(id);
     }
 
-    public Collection<Faculty> getAllFacul() {
-        return facultyRepository.findAll();
+    @Transactional(readOnly = true)
+    public Collection<FacultyDto> getAllFacul() {
+        FacultySnapshot.Snapshot snapshot = facultySnapshot.current();
+        if (snapshot != null) {
+            return snapshot.all();
+        }
+        return facultyRepository.findAllDtos();
     }
 
-    public Collection<Faculty> getFaculByColor(String color) {
-        return facultyRepository.getFacultiesByColor(color);
+    public void forEachFacul(Consumer<Faculty> action) {
+        entityStreamer.forEach(facultyRepository::streamAll, action);
     }
 
-    public Collection<Faculty> getFacultyNameOrColor(String searchString) {
-        return facultyRepository.getFacultyByNameIgnoreCaseOrColorIgnoreCase(searchString, searchString);
+    @Transactional(readOnly = true)
+    public CursorPage<FacultyDto> getFacultiesPage(String cursor, int size) {
+        long lastId = CursorPage.decode(cursor);
+        return CursorPage.of(facultyRepository.findDtosAfter(lastId, PageRequest.of(0, size)), FacultyDto::getId);
     }
 
+    @Cacheable(cacheNames = CacheConfig.FACULTY_SEARCH, key = "'color:' + T(ru.hogwarts.school.model.Faculty).normalize(#color)",
+            condition = "!@facultySnapshot.enabled")
+    @Transactional(readOnly = true)
+    public Collection<FacultyDto> getFaculByColor(String color) {
+        FacultySnapshot.Snapshot snapshot = facultySnapshot.current();
+        if (snapshot != null) {
+            return snapshot.byColor(color);
+        }
+        return facultyRepository.findDtosByColorKey(Faculty.normalize(color));
+    }
+
+    @Cacheable(cacheNames = CacheConfig.FACULTY_SEARCH, key = "'search:' + T(ru.hogwarts.school.model.Faculty).normalize(#searchString)",
+            condition = "!@facultySnapshot.enabled")
+    @Transactional(readOnly = true)
+    public Collection<FacultyDto> getFacultyNameOrColor(String searchString) {
+        FacultySnapshot.Snapshot snapshot = facultySnapshot.current();
+        if (snapshot != null) {
+            return snapshot.byNameOrColor(searchString);
+        }
+        return facultyRepository.findDtosByNameKeyOrColorKey(Faculty.normalize(searchString));
+    }
+
+    @Cacheable(cacheNames = CacheConfig.STUDENT_FACULTY, key = "#id")
     public Faculty getByStudentId(Long id) {
         return studentRepository.findById(id)
                 .map(Student::getFaculty)
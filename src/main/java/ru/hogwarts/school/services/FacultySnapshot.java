@@ -0,0 +1,131 @@
+package ru.hogwarts.school.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.hogwarts.school.dto.FacultyDto;
+import ru.hogwarts.school.model.Faculty;
+import ru.hogwarts.school.repository.FacultyRepository;
+
+import java.util.*;
+
+/**
+ * Immutable in-memory copy of the faculty table. Readers only dereference a volatile field, writers build a new
+ * snapshot and swap it in.
+ */
+@Component
+public class FacultySnapshot {
+    private final FacultyRepository facultyRepository;
+    private final boolean enabled;
+    private volatile Snapshot snapshot;
+
+    public FacultySnapshot(FacultyRepository facultyRepository,
+                           @Value("${faculty.snapshot.enabled:true}") boolean enabled) {
+        this.facultyRepository = facultyRepository;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the current snapshot, or {@code null} when the snapshot mode is off or not loaded yet.
+     */
+    public Snapshot current() {
+        return snapshot;
+    }
+
+    public synchronized void put(FacultyDto faculty) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return;
+        }
+        List<FacultyDto> faculties = new ArrayList<>(current.all.size() + 1);
+        for (FacultyDto existing : current.all) {
+            if (!existing.getId().equals(faculty.getId())) {
+                faculties.add(existing);
+            }
+        }
+        faculties.add(faculty);
+        snapshot = Snapshot.of(faculties);
+    }
+
+    public synchronized void remove(long id) {
+        Snapshot current = snapshot;
+        if (current == null || current.byId(id) == null) {
+            return;
+        }
+        List<FacultyDto> faculties = new ArrayList<>(current.all);
+        faculties.removeIf(existing -> existing.getId() == id);
+        snapshot = Snapshot.of(faculties);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void seed() {
+        refresh();
+    }
+
+    @Scheduled(fixedDelayString = "${faculty.snapshot.refresh-interval-ms:300000}",
+            initialDelayString = "${faculty.snapshot.refresh-interval-ms:300000}")
+    public synchronized void refresh() {
+        if (enabled) {
+            snapshot = Snapshot.of(facultyRepository.findAllDtos());
+        }
+    }
+
+    public static final class Snapshot {
+        private final List<FacultyDto> all;
+        private final Map<Long, FacultyDto> byId;
+        private final Map<String, List<FacultyDto>> byColor;
+        private final Map<String, List<FacultyDto>> byNameOrColor;
+
+        private Snapshot(List<FacultyDto> all, Map<Long, FacultyDto> byId,
+                         Map<String, List<FacultyDto>> byColor, Map<String, List<FacultyDto>> byNameOrColor) {
+            this.all = all;
+            this.byId = byId;
+            this.byColor = byColor;
+            this.byNameOrColor = byNameOrColor;
+        }
+
+        public static Snapshot of(Collection<FacultyDto> faculties) {
+            List<FacultyDto> all = new ArrayList<>(faculties);
+            all.sort(Comparator.comparing(FacultyDto::getId));
+            Map<Long, FacultyDto> byId = new HashMap<>();
+            Map<String, List<FacultyDto>> byColor = new HashMap<>();
+            Map<String, List<FacultyDto>> byNameOrColor = new HashMap<>();
+            for (FacultyDto faculty : all) {
+                byId.put(faculty.getId(), faculty);
+                String name = Faculty.normalize(faculty.getName());
+                String color = Faculty.normalize(faculty.getColor());
+                byColor.computeIfAbsent(color, key -> new ArrayList<>()).add(faculty);
+                byNameOrColor.computeIfAbsent(name, key -> new ArrayList<>()).add(faculty);
+                if (!Objects.equals(name, color)) {
+                    byNameOrColor.computeIfAbsent(color, key -> new ArrayList<>()).add(faculty);
+                }
+            }
+            byColor.replaceAll((key, list) -> List.copyOf(list));
+            byNameOrColor.replaceAll((key, list) -> List.copyOf(list));
+            return new Snapshot(List.copyOf(all), Collections.unmodifiableMap(byId),
+                    Collections.unmodifiableMap(byColor), Collections.unmodifiableMap(byNameOrColor));
+        }
+
+        public List<FacultyDto> all() {
+            return all;
+        }
+
+        public FacultyDto byId(long id) {
+            return byId.get(id);
+        }
+
+        public List<FacultyDto> byColor(String color) {
+            return byColor.getOrDefault(Faculty.normalize(color), List.of());
+        }
+
+        public List<FacultyDto> byNameOrColor(String searchString) {
+            return byNameOrColor.getOrDefault(Faculty.normalize(searchString), List.of());
+        }
+    }
+}
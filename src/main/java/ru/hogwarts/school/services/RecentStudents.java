@@ -0,0 +1,201 @@
+package ru.hogwarts.school.services;
+
+import org.hibernate.Hibernate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import ru.hogwarts.school.dto.FacultyDto;
+import ru.hogwarts.school.dto.StudentDto;
+import ru.hogwarts.school.model.Faculty;
+import ru.hogwarts.school.model.Student;
+import ru.hogwarts.school.repository.StudentRepository;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.UnaryOperator;
+
+/**
+ * Lock-free ring buffer of the most recently created students.
+ */
+@Component
+public class RecentStudents {
+    private final StudentRepository studentRepository;
+    private final FacultySnapshot facultySnapshot;
+    private final int capacity;
+    private final AtomicReferenceArray<Slot> slots;
+    private final AtomicLong head;
+    private volatile long firstSequence;
+    private final Set<Long> removedWhileSeeding = ConcurrentHashMap.newKeySet();
+    private volatile boolean ready;
+    private volatile boolean complete;
+
+    public RecentStudents(StudentRepository studentRepository, FacultySnapshot facultySnapshot,
+                          @Value("${student.recent.capacity:100}") int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("student.recent.capacity must be positive");
+        }
+        this.studentRepository = studentRepository;
+        this.facultySnapshot = facultySnapshot;
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        // live appends start one lap in, the seed fills the lap below them
+        this.head = new AtomicLong(capacity);
+        this.firstSequence = capacity;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the {@code n} newest students, newest first, or {@code null} when the buffer cannot answer.
+     */
+    public List<StudentDto> latest(int n) {
+        if (!ready || n > capacity) {
+            return null;
+        }
+        long last = head.get();
+        List<StudentDto> students = new ArrayList<>(n);
+        Set<Long> seen = new HashSet<>();
+        long first = firstSequence;
+        for (long sequence = last - 1; sequence >= Math.max(first, last - capacity); sequence--) {
+            Slot slot = slots.get(index(sequence));
+            if (slot != null && slot.sequence == sequence && slot.student != null
+                    && seen.add(slot.student.getId())) {
+                students.add(slot.student);
+            }
+        }
+        students.sort(Comparator.comparing(StudentDto::getId).reversed());
+        if (students.size() < n && !(complete && last - first <= capacity)) {
+            return null;
+        }
+        List<StudentDto> result = new ArrayList<>(Math.min(n, students.size()));
+        FacultySnapshot.Snapshot faculties = facultySnapshot.current();
+        for (StudentDto student : students.subList(0, Math.min(n, students.size()))) {
+            result.add(withFaculty(student, faculties));
+        }
+        return result;
+    }
+
+    public void added(StudentDto student) {
+        StudentDto resolved = withSnapshotFaculty(student);
+        long sequence = head.getAndIncrement();
+        slots.set(index(sequence), new Slot(sequence, resolved));
+    }
+
+    public void updated(StudentDto student) {
+        StudentDto resolved = withSnapshotFaculty(student);
+        replace(student.getId(), old -> resolved);
+    }
+
+    public void removed(long id) {
+        if (!ready) {
+            removedWhileSeeding.add(id);
+        }
+        replace(id, old -> null);
+    }
+
+    public void facultyAssigned(Collection<Long> ids, FacultyDto faculty) {
+        Set<Long> assigned = new HashSet<>(ids);
+        for (int i = 0; i < capacity; i++) {
+            Slot slot = slots.get(i);
+            while (slot != null && slot.student != null && assigned.contains(slot.student.getId())) {
+                StudentDto student = slot.student;
+                Slot moved = new Slot(slot.sequence,
+                        new StudentDto(student.getId(), student.getName(), student.getAge(), faculty));
+                if (slots.compareAndSet(i, slot, moved)) {
+                    break;
+                }
+                slot = slots.get(i);
+            }
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void seed() {
+        if (ready) {
+            return;
+        }
+        List<StudentDto> latest = studentRepository.findLatestDtos(PageRequest.of(0, capacity));
+        Set<Long> present = new HashSet<>();
+        for (int i = 0; i < capacity; i++) {
+            Slot slot = slots.get(i);
+            if (slot != null && slot.student != null) {
+                present.add(slot.student.getId());
+            }
+        }
+        long sequence = capacity;
+        boolean overlapped = false;
+        for (StudentDto student : latest) {
+            if (present.contains(student.getId()) || removedWhileSeeding.contains(student.getId())) {
+                continue;
+            }
+            if (!slots.compareAndSet(index(sequence - 1), null, new Slot(sequence - 1, student))) {
+                overlapped = true;
+                break;
+            }
+            sequence--;
+        }
+        firstSequence = sequence;
+        complete = latest.size() < capacity && !overlapped;
+        ready = true;
+        removedWhileSeeding.clear();
+    }
+
+    public static StudentDto describe(Student student) {
+        Faculty faculty = student.getFaculty();
+        FacultyDto facultyDto = null;
+        if (faculty != null) {
+            facultyDto = Hibernate.isInitialized(faculty)
+                    ? FacultyDto.of(faculty)
+                    : new FacultyDto(faculty.getId(), null, null);
+        }
+        return new StudentDto(student.getId(), student.getName(), student.getAge(), facultyDto);
+    }
+
+    private void replace(long id, UnaryOperator<StudentDto> change) {
+        for (int i = 0; i < capacity; i++) {
+            Slot slot = slots.get(i);
+            while (slot != null && slot.student != null && slot.student.getId() == id) {
+                if (slots.compareAndSet(i, slot, new Slot(slot.sequence, change.apply(slot.student)))) {
+                    return;
+                }
+                slot = slots.get(i);
+            }
+        }
+    }
+
+    private StudentDto withSnapshotFaculty(StudentDto student) {
+        FacultyDto faculty = student.getFaculty();
+        if (faculty == null || faculty.getId() == null || faculty.getName() != null) {
+            return student;
+        }
+        return withFaculty(student, facultySnapshot.current());
+    }
+
+    private static StudentDto withFaculty(StudentDto student, FacultySnapshot.Snapshot faculties) {
+        if (faculties == null || student.getFaculty() == null || student.getFaculty().getId() == null) {
+            return student;
+        }
+        FacultyDto faculty = faculties.byId(student.getFaculty().getId());
+        return faculty == null ? student : new StudentDto(student.getId(), student.getName(), student.getAge(), faculty);
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence % capacity);
+    }
+
+    private static final class Slot {
+        private final long sequence;
+        private final StudentDto student;
+
+        private Slot(long sequence, StudentDto student) {
+            this.sequence = sequence;
+            this.student = student;
+        }
+    }
+}
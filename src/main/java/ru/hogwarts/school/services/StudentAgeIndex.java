@@ -0,0 +1,216 @@
+package ru.hogwarts.school.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.hogwarts.school.repository.StudentRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+@Component
+public class StudentAgeIndex {
+    private static final Logger logger = LoggerFactory.getLogger(StudentAgeIndex.class);
+    private static final long[] EMPTY = new long[0];
+
+    private final StudentRepository studentRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Postings postings = new Postings();
+    private boolean ready;
+    // changes seen while a rebuild scans the table, replayed onto the fresh postings before they are installed
+    private List<Consumer<Postings>> pending;
+
+    public StudentAgeIndex(StudentRepository studentRepository, PlatformTransactionManager transactionManager) {
+        this.studentRepository = studentRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Returns the ids of students aged between {@code minAge} and {@code maxAge} inclusive, ordered by age and id,
+     * or {@code null} while the index is not built yet.
+     */
+    public long[] idsBetween(int minAge, int maxAge) {
+        lock.readLock().lock();
+        try {
+            if (!ready) {
+                return null;
+            }
+            return postings.collect(minAge, maxAge);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void added(long id, int age) {
+        apply(target -> target.add(age, id));
+    }
+
+    public void removed(long id, int age) {
+        apply(target -> target.remove(age, id));
+    }
+
+    public void changed(long id, int oldAge, int newAge) {
+        if (oldAge == newAge) {
+            return;
+        }
+        apply(target -> {
+            target.remove(oldAge, id);
+            target.add(newAge, id);
+        });
+    }
+
+    private void apply(Consumer<Postings> change) {
+        lock.writeLock().lock();
+        try {
+            change.accept(postings);
+            if (pending != null) {
+                pending.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void seed() {
+        rebuild();
+    }
+
+    @Scheduled(fixedDelayString = "${student.age-index.rebuild-interval-ms:3600000}",
+            initialDelayString = "${student.age-index.rebuild-interval-ms:3600000}")
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            if (pending != null) {
+                logger.debug("The age index is already being rebuilt");
+                return;
+            }
+            pending = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Postings fresh = new Postings();
+        try {
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try (Stream<Object[]> rows = studentRepository.streamIdAndAge()) {
+                    rows.forEach(row -> fresh.add(((Number) row[1]).intValue(), ((Number) row[0]).longValue()));
+                }
+            });
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                pending = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+        lock.writeLock().lock();
+        try {
+            // every change sets state rather than adjusting it, so replaying one the scan already saw is harmless
+            pending.forEach(change -> change.accept(fresh));
+            pending = null;
+            postings = fresh;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static final class Postings {
+        private int[] ages = new int[0];
+        private long[][] ids = new long[0][];
+        private int[] sizes = new int[0];
+
+        long[] collect(int minAge, int maxAge) {
+            if (minAge > maxAge) {
+                return EMPTY;
+            }
+            int from = lowerBound(minAge);
+            int to = maxAge == Integer.MAX_VALUE ? ages.length : lowerBound(maxAge + 1);
+            int total = 0;
+            for (int i = from; i < to; i++) {
+                total += sizes[i];
+            }
+            long[] result = new long[total];
+            int offset = 0;
+            for (int i = from; i < to; i++) {
+                System.arraycopy(ids[i], 0, result, offset, sizes[i]);
+                offset += sizes[i];
+            }
+            return result;
+        }
+
+        void add(int age, long id) {
+            int slot = Arrays.binarySearch(ages, age);
+            if (slot < 0) {
+                slot = -slot - 1;
+                ages = insert(ages, slot, age);
+                ids = insert(ids, slot, new long[4]);
+                sizes = insert(sizes, slot, 0);
+            }
+            long[] posting = ids[slot];
+            int size = sizes[slot];
+            int position = Arrays.binarySearch(posting, 0, size, id);
+            if (position >= 0) {
+                return;
+            }
+            position = -position - 1;
+            if (size == posting.length) {
+                posting = Arrays.copyOf(posting, size + (size >> 1) + 1);
+                ids[slot] = posting;
+            }
+            System.arraycopy(posting, position, posting, position + 1, size - position);
+            posting[position] = id;
+            sizes[slot] = size + 1;
+        }
+
+        void remove(int age, long id) {
+            int slot = Arrays.binarySearch(ages, age);
+            if (slot < 0) {
+                return;
+            }
+            long[] posting = ids[slot];
+            int size = sizes[slot];
+            int position = Arrays.binarySearch(posting, 0, size, id);
+            if (position < 0) {
+                return;
+            }
+            System.arraycopy(posting, position + 1, posting, position, size - position - 1);
+            sizes[slot] = size - 1;
+        }
+
+        private int lowerBound(int age) {
+            int slot = Arrays.binarySearch(ages, age);
+            return slot >= 0 ? slot : -slot - 1;
+        }
+
+        private static int[] insert(int[] array, int index, int value) {
+            int[] result = new int[array.length + 1];
+            System.arraycopy(array, 0, result, 0, index);
+            result[index] = value;
+            System.arraycopy(array, index, result, index + 1, array.length - index);
+            return result;
+        }
+
+        private static long[][] insert(long[][] array, int index, long[] value) {
+            long[][] result = new long[array.length + 1][];
+            System.arraycopy(array, 0, result, 0, index);
+            result[index] = value;
+            System.arraycopy(array, index, result, index + 1, array.length - index);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package ru.hogwarts.school.services;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.hogwarts.school.dto.StudentDto;
+import ru.hogwarts.school.model.Student;
+
+import javax.persistence.PostLoad;
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class StudentChangeListener {
+
+    // resolved lazily, the listener is built together with the EntityManagerFactory
+    private final ObjectProvider<StudentStatistics> studentStatistics;
+    private final ObjectProvider<StudentAgeIndex> studentAgeIndex;
+    private final ObjectProvider<StudentNameIndex> studentNameIndex;
+    private final ObjectProvider<RecentStudents> recentStudents;
+    private final Map<InstanceKey, Integer> persistedAges = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Student> collected = new ReferenceQueue<>();
+
+    public StudentChangeListener(ObjectProvider<StudentStatistics> studentStatistics,
+                                 ObjectProvider<StudentAgeIndex> studentAgeIndex,
+                                 ObjectProvider<StudentNameIndex> studentNameIndex,
+                                 ObjectProvider<RecentStudents> recentStudents) {
+        this.studentStatistics = studentStatistics;
+        this.studentAgeIndex = studentAgeIndex;
+        this.studentNameIndex = studentNameIndex;
+        this.recentStudents = recentStudents;
+    }
+
+    @PostLoad
+    public void loaded(Student student) {
+        remember(student);
+    }
+
+    @PostPersist
+    public void persisted(Student student) {
+        long id = student.getId();
+        int age = student.getAge();
+        String name = student.getName();
+        StudentDto recent = RecentStudents.describe(student);
+        remember(student);
+        afterCommit(() -> {
+            studentStatistics.getObject().added(age);
+            studentAgeIndex.getObject().added(id, age);
+            studentNameIndex.getObject().put(id, name);
+            recentStudents.getObject().added(recent);
+        });
+    }
+
+    @PostUpdate
+    public void updated(Student student) {
+        long id = student.getId();
+        Integer persistedAge = persistedAges.get(new InstanceKey(student, null));
+        int age = student.getAge();
+        String name = student.getName();
+        StudentDto recent = RecentStudents.describe(student);
+        remember(student);
+        afterCommit(() -> {
+            if (persistedAge != null && persistedAge != age) {
+                studentStatistics.getObject().changed(persistedAge, age);
+                studentAgeIndex.getObject().changed(id, persistedAge, age);
+            }
+            studentNameIndex.getObject().put(id, name);
+            recentStudents.getObject().updated(recent);
+        });
+    }
+
+    @PostRemove
+    public void removed(Student student) {
+        long id = student.getId();
+        Integer persistedAge = persistedAges.remove(new InstanceKey(student, null));
+        int age = persistedAge != null ? persistedAge : student.getAge();
+        afterCommit(() -> {
+            studentStatistics.getObject().removed(age);
+            studentAgeIndex.getObject().removed(id, age);
+            studentNameIndex.getObject().remove(id);
+            recentStudents.getObject().removed(id);
+        });
+    }
+
+    private void remember(Student student) {
+        Reference<? extends Student> stale;
+        while ((stale = collected.poll()) != null) {
+            persistedAges.remove(stale);
+        }
+        persistedAges.put(new InstanceKey(student, collected), student.getAge());
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static final class InstanceKey extends WeakReference<Student> {
+        private final int hash;
+
+        private InstanceKey(Student student, ReferenceQueue<Student> queue) {
+            super(student, queue);
+            this.hash = System.identityHashCode(student);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof InstanceKey)) return false;
+            Student student = get();
+            return student != null && student == ((InstanceKey) o).get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
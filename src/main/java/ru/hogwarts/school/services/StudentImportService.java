@@ -0,0 +1,301 @@
+package ru.hogwarts.school.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.hogwarts.school.config.CacheConfig;
+import ru.hogwarts.school.dto.StudentImportReport;
+import ru.hogwarts.school.model.Faculty;
+import ru.hogwarts.school.model.Student;
+import ru.hogwarts.school.repository.FacultyRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+@Service
+public class StudentImportService {
+    private static final Logger logger = LoggerFactory.getLogger(StudentImportService.class);
+    private static final int PROGRESS_EVERY_CHUNKS = 10;
+
+    public enum Format {
+        CSV,
+        NDJSON
+    }
+
+    private final FacultyRepository facultyRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final int defaultBatchSize;
+    private final int maxReportedErrors;
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public StudentImportService(FacultyRepository facultyRepository, ObjectMapper objectMapper,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${student.import.batch-size:1000}") int defaultBatchSize,
+                                @Value("${student.import.max-reported-errors:1000}") int maxReportedErrors) {
+        this.facultyRepository = facultyRepository;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.defaultBatchSize = defaultBatchSize;
+        this.maxReportedErrors = maxReportedErrors;
+    }
+
+    @CacheEvict(cacheNames = CacheConfig.FACULTY_STUDENTS, allEntries = true)
+    public StudentImportReport importStudents(InputStream in, Format format, Integer batchSize) throws IOException {
+        int chunkSize = batchSize == null ? defaultBatchSize : batchSize;
+        long started = System.nanoTime();
+        Progress progress = new Progress(maxReportedErrors);
+        Map<String, Optional<Faculty>> faculties = new HashMap<>();
+        List<Student> chunk = new ArrayList<>(chunkSize);
+        List<Long> chunkLines = new ArrayList<>(chunkSize);
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        Map<String, Integer> header = null;
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            if (format == Format.CSV && header == null) {
+                header = parseHeader(line);
+                continue;
+            }
+            progress.rows++;
+            try {
+                chunk.add(format == Format.CSV
+                        ? fromCsv(header, parseCsvLine(line), faculties)
+                        : fromJson(line, faculties));
+                chunkLines.add(lineNumber);
+            } catch (IllegalArgumentException e) {
+                progress.fail(lineNumber, e.getMessage());
+                continue;
+            }
+            if (chunk.size() == chunkSize) {
+                persist(chunk, chunkLines, progress);
+                chunk.clear();
+                chunkLines.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            persist(chunk, chunkLines, progress);
+        }
+
+        long duration = (System.nanoTime() - started) / 1_000_000;
+        logger.info("Student import finished: {} rows, {} imported, {} failed in {} ms",
+                progress.rows, progress.imported, progress.failed, duration);
+        return new StudentImportReport(progress.rows, progress.imported, progress.failed, progress.chunks, duration,
+                progress.errors);
+    }
+
+    private void persist(List<Student> chunk, List<Long> lines, Progress progress) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> insert(chunk));
+            progress.imported += chunk.size();
+        } catch (RuntimeException e) {
+            // the chunk was rolled back, retry row by row to find the offending ones
+            for (int i = 0; i < chunk.size(); i++) {
+                Student student = chunk.get(i);
+                student.setId(null);
+                try {
+                    transactionTemplate.executeWithoutResult(status -> insert(List.of(student)));
+                    progress.imported++;
+                } catch (RuntimeException single) {
+                    student.setId(null);
+                    progress.fail(lines.get(i), rootMessage(single));
+                }
+            }
+        }
+        if (++progress.chunks % PROGRESS_EVERY_CHUNKS == 0) {
+            logger.info("Student import progress: {} rows read, {} imported, {} failed",
+                    progress.rows, progress.imported, progress.failed);
+        }
+    }
+
+    private void insert(List<Student> students) {
+        // the session is the request's open-in-view one, so its batch size is put back and only the rows are detached
+        Session session = entityManager.unwrap(Session.class);
+        Integer sessionBatchSize = session.getJdbcBatchSize();
+        session.setJdbcBatchSize(students.size());
+        try {
+            for (Student student : students) {
+                entityManager.persist(student);
+            }
+            entityManager.flush();
+        } finally {
+            session.setJdbcBatchSize(sessionBatchSize);
+        }
+        students.forEach(entityManager::detach);
+    }
+
+    private static Map<String, Integer> parseHeader(String line) {
+        Map<String, Integer> header = new HashMap<>();
+        List<String> columns = parseCsvLine(line);
+        for (int i = 0; i < columns.size(); i++) {
+            header.put(columns.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        if (!header.containsKey("name") || !header.containsKey("age")) {
+            throw new IllegalArgumentException("CSV header must contain name and age columns");
+        }
+        return header;
+    }
+
+    private Student fromCsv(Map<String, Integer> header, List<String> values, Map<String, Optional<Faculty>> faculties) {
+        Student student = new Student();
+        student.setName(requireName(column(header, values, "name")));
+        student.setAge(parseAge(column(header, values, "age")));
+        String faculty = column(header, values, "faculty");
+        if (faculty == null) {
+            faculty = column(header, values, "faculty_id");
+        }
+        student.setFaculty(resolveFaculty(faculty, faculties));
+        return student;
+    }
+
+    private Student fromJson(String line, Map<String, Optional<Faculty>> faculties) {
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(line);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed JSON: " + e.getOriginalMessage());
+        }
+        if (node == null || !node.isObject()) {
+            throw new IllegalArgumentException("Row must be a JSON object");
+        }
+        Student student = new Student();
+        student.setName(requireName(text(node.get("name"))));
+        student.setAge(parseAge(text(node.get("age"))));
+        JsonNode faculty = node.get("faculty");
+        if (faculty != null && faculty.isObject()) {
+            faculty = faculty.has("id") ? faculty.get("id") : faculty.get("name");
+        }
+        if (faculty == null || faculty.isNull()) {
+            faculty = node.has("facultyId") ? node.get("facultyId") : node.get("facultyName");
+        }
+        student.setFaculty(resolveFaculty(text(faculty), faculties));
+        return student;
+    }
+
+    private Faculty resolveFaculty(String reference, Map<String, Optional<Faculty>> faculties) {
+        if (reference == null || reference.isBlank()) {
+            return null;
+        }
+        String key = reference.trim().toLowerCase(Locale.ROOT);
+        return faculties.computeIfAbsent(key, this::lookupFaculty)
+                .orElseThrow(() -> new IllegalArgumentException("Faculty not found: " + reference));
+    }
+
+    private Optional<Faculty> lookupFaculty(String reference) {
+        try {
+            return facultyRepository.findById(Long.valueOf(reference));
+        } catch (NumberFormatException e) {
+            return facultyRepository.findFirstByNameKey(Faculty.normalize(reference));
+        }
+    }
+
+    private static String requireName(String name) {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("Name is required");
+        }
+        return name.trim();
+    }
+
+    private static int parseAge(String age) {
+        if (age == null || age.isBlank()) {
+            throw new IllegalArgumentException("Age is required");
+        }
+        int value;
+        try {
+            value = Integer.parseInt(age.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Age must be a number: " + age);
+        }
+        if (value <= 0) {
+            throw new IllegalArgumentException("Age must be positive: " + value);
+        }
+        return value;
+    }
+
+    private static String column(Map<String, Integer> header, List<String> values, String name) {
+        Integer index = header.get(name);
+        return index == null || index >= values.size() ? null : values.get(index);
+    }
+
+    private static String text(JsonNode node) {
+        return node == null || node.isNull() ? null : node.asText();
+    }
+
+    private static List<String> parseCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted value");
+        }
+        values.add(value.toString());
+        return values;
+    }
+
+    private static String rootMessage(Throwable e) {
+        Throwable cause = e;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage() == null ? cause.getClass().getSimpleName() : cause.getMessage();
+    }
+
+    private static final class Progress {
+        private final int maxErrors;
+        private final List<StudentImportReport.RowError> errors = new ArrayList<>();
+        private long rows;
+        private long imported;
+        private long failed;
+        private long chunks;
+
+        private Progress(int maxErrors) {
+            this.maxErrors = maxErrors;
+        }
+
+        private void fail(long line, String message) {
+            failed++;
+            if (errors.size() < maxErrors) {
+                errors.add(new StudentImportReport.RowError(line, message));
+            }
+        }
+    }
+}
@@ -0,0 +1,496 @@
+package ru.hogwarts.school.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.hogwarts.school.repository.StudentRepository;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.function.Consumer;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+@Component
+public class StudentNameIndex {
+    private static final Logger logger = LoggerFactory.getLogger(StudentNameIndex.class);
+    private static final long[] EMPTY = new long[0];
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final int MAX_PREFIX_TOKENS = 256;
+    private static final int MIN_FUZZY_LENGTH = 3;
+    private static final int MAX_FUZZY_TRIGRAM_TOKENS = 2048;
+    private static final double EXACT_SCORE = 1.0;
+    private static final double PREFIX_SCORE = 0.6;
+    private static final double PREFIX_COVERAGE_SCORE = 0.3;
+    private static final double FUZZY_SCORE = 0.5;
+
+    private final StudentRepository studentRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Entries entries = new Entries();
+    private boolean ready;
+    // changes seen while a rebuild scans the table, replayed onto the fresh entries before they are installed
+    private List<Consumer<Entries>> pending;
+
+    public StudentNameIndex(StudentRepository studentRepository, PlatformTransactionManager transactionManager) {
+        this.studentRepository = studentRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Returns the ids of at most {@code limit} students whose names match every word of {@code query}, best match
+     * first, or {@code null} while the index is not built yet. A query word matches a name word it is a prefix of,
+     * or one that is within one or two typos of it.
+     */
+    public long[] search(String query, int limit) {
+        List<String> terms = tokens(query);
+        lock.readLock().lock();
+        try {
+            if (!ready) {
+                return null;
+            }
+            return terms.isEmpty() ? EMPTY : entries.search(terms, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(long id, String name) {
+        apply(target -> target.put(id, name));
+    }
+
+    public void remove(long id) {
+        apply(target -> target.remove(id));
+    }
+
+    private void apply(Consumer<Entries> change) {
+        lock.writeLock().lock();
+        try {
+            change.accept(entries);
+            if (pending != null) {
+                pending.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void seed() {
+        rebuild();
+    }
+
+    @Scheduled(fixedDelayString = "${student.name-index.rebuild-interval-ms:3600000}",
+            initialDelayString = "${student.name-index.rebuild-interval-ms:3600000}")
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            if (pending != null) {
+                logger.debug("The name index is already being rebuilt");
+                return;
+            }
+            pending = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Entries fresh = new Entries();
+        try {
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try (Stream<Object[]> rows = studentRepository.streamIdAndName()) {
+                    rows.forEach(row -> fresh.put(((Number) row[0]).longValue(), (String) row[1]));
+                }
+            });
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                pending = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+        lock.writeLock().lock();
+        try {
+            // puts and removes set state, so replaying one the scan already saw is harmless
+            pending.forEach(change -> change.accept(fresh));
+            pending = null;
+            entries = fresh;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Splits a name or query into lower-cased words with diacritics removed.
+     */
+    static List<String> tokens(String text) {
+        if (text == null) {
+            return Collections.emptyList();
+        }
+        String folded = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("")
+                .toLowerCase(Locale.ROOT);
+        Set<String> tokens = new LinkedHashSet<>();
+        for (String token : NON_WORD.split(folded)) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return new ArrayList<>(tokens);
+    }
+
+    /**
+     * Tells whether every term is a prefix of a word of {@code name}, the matching the index does without typos.
+     */
+    static boolean matchesPrefixes(List<String> terms, String name) {
+        List<String> words = tokens(name);
+        for (String term : terms) {
+            if (words.stream().noneMatch(word -> word.startsWith(term))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<String> trigrams(String token) {
+        String padded = "  " + token + " ";
+        List<String> trigrams = new ArrayList<>(padded.length() - 2);
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    /**
+     * Smallest optimal-string-alignment distance between {@code term} and any prefix of {@code token} whose length
+     * is within {@code maxEdits} of the term, so that partially typed words still match.
+     */
+    private static int prefixDistance(String term, String token, int maxEdits) {
+        int columns = Math.min(token.length(), term.length() + maxEdits);
+        int[][] distance = new int[term.length() + 1][columns + 1];
+        for (int i = 0; i <= term.length(); i++) {
+            distance[i][0] = i;
+        }
+        for (int j = 0; j <= columns; j++) {
+            distance[0][j] = j;
+        }
+        for (int i = 1; i <= term.length(); i++) {
+            for (int j = 1; j <= columns; j++) {
+                int cost = term.charAt(i - 1) == token.charAt(j - 1) ? 0 : 1;
+                int best = Math.min(Math.min(distance[i - 1][j] + 1, distance[i][j - 1] + 1),
+                        distance[i - 1][j - 1] + cost);
+                if (i > 1 && j > 1 && term.charAt(i - 1) == token.charAt(j - 2)
+                        && term.charAt(i - 2) == token.charAt(j - 1)) {
+                    best = Math.min(best, distance[i - 2][j - 2] + 1);
+                }
+                distance[i][j] = best;
+            }
+        }
+        int result = Integer.MAX_VALUE;
+        for (int j = Math.max(0, term.length() - maxEdits); j <= columns; j++) {
+            result = Math.min(result, distance[term.length()][j]);
+        }
+        return result;
+    }
+
+    private static final class Entries {
+        private final Map<Long, String> names = new HashMap<>();
+        private final TreeMap<String, Postings> words = new TreeMap<>();
+        private final Map<String, Set<String>> trigramTokens = new HashMap<>();
+
+        void put(long id, String name) {
+            String previous = names.get(id);
+            if (Objects.equals(previous, name)) {
+                return;
+            }
+            if (previous != null) {
+                unlink(id, previous);
+            }
+            if (name == null) {
+                names.remove(id);
+                return;
+            }
+            names.put(id, name);
+            for (String token : tokens(name)) {
+                words.computeIfAbsent(token, this::link).add(id);
+            }
+        }
+
+        void remove(long id) {
+            String previous = names.remove(id);
+            if (previous != null) {
+                unlink(id, previous);
+            }
+        }
+
+        /**
+         * Scores candidates term by term in id-sorted primitive arrays: the postings of every token a term matches
+         * are merged, keeping the best score per id, and from the second term on only ids still in the running
+         * candidates are taken.
+         */
+        long[] search(List<String> terms, int limit) {
+            long[] ids = null;
+            double[] scores = null;
+            int size = 0;
+            for (String term : terms) {
+                long[] termIds = new long[0];
+                double[] termScores = new double[0];
+                int termSize = 0;
+                for (Match match : match(term)) {
+                    Postings postings = match.postings;
+                    long[] mergedIds = new long[termSize + postings.size];
+                    double[] mergedScores = new double[mergedIds.length];
+                    int merged = 0;
+                    int i = 0;
+                    int j = 0;
+                    while (i < termSize || j < postings.size) {
+                        if (j < postings.size && (i == termSize || postings.ids[j] <= termIds[i])) {
+                            long id = postings.ids[j++];
+                            double previous = 0;
+                            if (ids != null) {
+                                int position = Arrays.binarySearch(ids, 0, size, id);
+                                if (position < 0) {
+                                    continue;
+                                }
+                                previous = scores[position];
+                            }
+                            double score = previous + match.score;
+                            if (i < termSize && termIds[i] == id) {
+                                score = Math.max(score, termScores[i++]);
+                            }
+                            mergedIds[merged] = id;
+                            mergedScores[merged++] = score;
+                        } else {
+                            mergedIds[merged] = termIds[i];
+                            mergedScores[merged++] = termScores[i++];
+                        }
+                    }
+                    termIds = mergedIds;
+                    termScores = mergedScores;
+                    termSize = merged;
+                }
+                if (termSize == 0) {
+                    return EMPTY;
+                }
+                ids = termIds;
+                scores = termScores;
+                size = termSize;
+            }
+            return top(ids, scores, size, limit);
+        }
+
+        /**
+         * Picks the {@code limit} best candidates, highest score first and lower id on ties, with a bounded heap of
+         * candidate positions whose root is the worst kept candidate.
+         */
+        private static long[] top(long[] ids, double[] scores, int size, int limit) {
+            int[] heap = new int[Math.min(limit, size)];
+            int kept = 0;
+            for (int candidate = 0; candidate < size; candidate++) {
+                if (kept < heap.length) {
+                    heap[kept] = candidate;
+                    siftUp(heap, kept++, ids, scores);
+                } else if (heap.length > 0 && better(candidate, heap[0], ids, scores)) {
+                    heap[0] = candidate;
+                    siftDown(heap, kept, ids, scores);
+                }
+            }
+            long[] result = new long[kept];
+            for (int i = kept - 1; i >= 0; i--) {
+                result[i] = ids[heap[0]];
+                heap[0] = heap[i];
+                siftDown(heap, i, ids, scores);
+            }
+            return result;
+        }
+
+        private static boolean better(int a, int b, long[] ids, double[] scores) {
+            return scores[a] > scores[b] || (scores[a] == scores[b] && ids[a] < ids[b]);
+        }
+
+        private static void siftUp(int[] heap, int index, long[] ids, double[] scores) {
+            while (index > 0) {
+                int parent = (index - 1) / 2;
+                if (!better(heap[parent], heap[index], ids, scores)) {
+                    return;
+                }
+                swap(heap, parent, index);
+                index = parent;
+            }
+        }
+
+        private static void siftDown(int[] heap, int size, long[] ids, double[] scores) {
+            int index = 0;
+            while (true) {
+                int worst = index;
+                for (int child = 2 * index + 1; child <= 2 * index + 2 && child < size; child++) {
+                    if (better(heap[worst], heap[child], ids, scores)) {
+                        worst = child;
+                    }
+                }
+                if (worst == index) {
+                    return;
+                }
+                swap(heap, index, worst);
+                index = worst;
+            }
+        }
+
+        private static void swap(int[] heap, int a, int b) {
+            int value = heap[a];
+            heap[a] = heap[b];
+            heap[b] = value;
+        }
+
+        private List<Match> match(String term) {
+            Map<String, Match> matched = new HashMap<>();
+            Postings exact = words.get(term);
+            if (exact != null) {
+                matched.put(term, new Match(exact, EXACT_SCORE));
+            }
+            // when a short prefix covers too many words, the ones shared by the most students are kept
+            PriorityQueue<Map.Entry<String, Postings>> prefixed = new PriorityQueue<>(
+                    Comparator.comparingInt(entry -> entry.getValue().size));
+            for (Map.Entry<String, Postings> word
+                    : words.subMap(term, false, term + Character.MAX_VALUE, false).entrySet()) {
+                prefixed.add(word);
+                if (prefixed.size() > MAX_PREFIX_TOKENS) {
+                    prefixed.poll();
+                }
+            }
+            for (Map.Entry<String, Postings> word : prefixed) {
+                String token = word.getKey();
+                matched.put(token, new Match(word.getValue(),
+                        PREFIX_SCORE + PREFIX_COVERAGE_SCORE * term.length() / token.length()));
+            }
+            if (term.length() >= MIN_FUZZY_LENGTH) {
+                matchFuzzy(term, matched);
+            }
+            List<Match> matches = new ArrayList<>(matched.values());
+            // higher scores first, so an id matched by several tokens keeps its best score at the first merge
+            matches.sort(Comparator.comparingDouble((Match match) -> match.score).reversed());
+            return matches;
+        }
+
+        private void matchFuzzy(String term, Map<String, Match> matched) {
+            int maxEdits = term.length() <= 5 ? 1 : 2;
+            List<String> termTrigrams = trigrams(term);
+            List<Set<String>> lists = new ArrayList<>(termTrigrams.size());
+            for (String trigram : termTrigrams) {
+                Set<String> tokens = trigramTokens.get(trigram);
+                if (tokens != null) {
+                    lists.add(tokens);
+                }
+            }
+            // every edit breaks at most three trigrams, and a partially typed word loses its trailing one
+            int minOverlap = Math.max(1, termTrigrams.size() - 3 * maxEdits - 1);
+            if (lists.size() < minOverlap) {
+                return;
+            }
+            // a token sharing minOverlap trigrams is in one of the rarest lists.size() - minOverlap + 1 lists, so
+            // only those propose candidates, and a list too common to be selective proposes none
+            lists.sort(Comparator.comparingInt(Set::size));
+            int proposing = lists.size() - minOverlap + 1;
+            Map<String, Integer> overlap = new HashMap<>();
+            int list = 0;
+            for (; list < proposing && lists.get(list).size() <= MAX_FUZZY_TRIGRAM_TOKENS; list++) {
+                for (String candidate : lists.get(list)) {
+                    overlap.merge(candidate, 1, Integer::sum);
+                }
+            }
+            for (; list < lists.size(); list++) {
+                Set<String> tokens = lists.get(list);
+                for (Map.Entry<String, Integer> candidate : overlap.entrySet()) {
+                    if (tokens.contains(candidate.getKey())) {
+                        candidate.setValue(candidate.getValue() + 1);
+                    }
+                }
+            }
+            for (Map.Entry<String, Integer> candidate : overlap.entrySet()) {
+                String token = candidate.getKey();
+                if (candidate.getValue() < minOverlap || matched.containsKey(token)) {
+                    continue;
+                }
+                int distance = prefixDistance(term, token, maxEdits);
+                if (distance <= maxEdits) {
+                    matched.put(token, new Match(words.get(token),
+                            FUZZY_SCORE * (1 - (double) distance / (term.length() + 1))));
+                }
+            }
+        }
+
+        private Postings link(String token) {
+            for (String trigram : trigrams(token)) {
+                trigramTokens.computeIfAbsent(trigram, key -> new HashSet<>()).add(token);
+            }
+            return new Postings();
+        }
+
+        private void unlink(long id, String name) {
+            for (String token : tokens(name)) {
+                Postings postings = words.get(token);
+                if (postings == null) {
+                    continue;
+                }
+                postings.remove(id);
+                if (postings.size > 0) {
+                    continue;
+                }
+                words.remove(token);
+                for (String trigram : trigrams(token)) {
+                    Set<String> candidates = trigramTokens.get(trigram);
+                    if (candidates != null && candidates.remove(token) && candidates.isEmpty()) {
+                        trigramTokens.remove(trigram);
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class Match {
+        private final Postings postings;
+        private final double score;
+
+        private Match(Postings postings, double score) {
+            this.postings = postings;
+            this.score = score;
+        }
+    }
+
+    private static final class Postings {
+        private long[] ids = new long[2];
+        private int size;
+
+        void add(long id) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position >= 0) {
+                return;
+            }
+            position = -position - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+            }
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            ids[position] = id;
+            size++;
+        }
+
+        void remove(long id) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position < 0) {
+                return;
+            }
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            size--;
+        }
+    }
+}
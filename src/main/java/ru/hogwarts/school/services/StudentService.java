@@ -1,80 +1,289 @@
 package ru.hogwarts.school.services;
 
-import org.springframework.data.domain.Page;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.hogwarts.school.config.CacheConfig;
+import ru.hogwarts.school.dto.CursorPage;
+import ru.hogwarts.school.dto.FacultyDto;
+import ru.hogwarts.school.dto.StudentAgeStatistics;
+import ru.hogwarts.school.dto.StudentDto;
 import ru.hogwarts.school.model.Faculty;
 import ru.hogwarts.school.model.Student;
+import ru.hogwarts.school.repository.EntityStreamer;
 import ru.hogwarts.school.repository.FacultyRepository;
 import ru.hogwarts.school.repository.StudentRepository;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.function.Consumer;
 
 
 @Service
 public class StudentService {
-
+    private static final int HYDRATE_BATCH = 1000;
+    private static final int BULK_BATCH = 1000;
+    private static final int SEARCH_FALLBACK_BATCH = 500;
 
     private final StudentRepository studentRepository;
     private final FacultyRepository facultyRepository;
+    private final EntityStreamer entityStreamer;
+    private final StudentStatistics studentStatistics;
+    private final StudentAgeIndex studentAgeIndex;
+    private final StudentNameIndex studentNameIndex;
+    private final RecentStudents recentStudents;
 
 
-    public StudentService(StudentRepository studentRepository, FacultyRepository facultyRepository) {
+    public StudentService(StudentRepository studentRepository, FacultyRepository facultyRepository,
+                          EntityStreamer entityStreamer, StudentStatistics studentStatistics,
+                          StudentAgeIndex studentAgeIndex, StudentNameIndex studentNameIndex,
+                          RecentStudents recentStudents) {
         this.studentRepository = studentRepository;
         this.facultyRepository = facultyRepository;
+        this.entityStreamer = entityStreamer;
+        this.studentStatistics = studentStatistics;
+        this.studentAgeIndex = studentAgeIndex;
+        this.studentNameIndex = studentNameIndex;
+        this.recentStudents = recentStudents;
     }
 
+    @CacheEvict(cacheNames = CacheConfig.FACULTY_STUDENTS, allEntries = true)
     public Student createStud(Student student) {
         return studentRepository.save(student);
     }
 
+    @Cacheable(cacheNames = CacheConfig.STUDENTS, key = "#id")
     public Student findStud(Long id) {
         return studentRepository.findById(id)
                 .orElseThrow(NoSuchElementException::new);
     }
 
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.STUDENTS, key = "#student.id", condition = "#student.id != null"),
+            @CacheEvict(cacheNames = CacheConfig.STUDENT_FACULTY, key = "#student.id", condition = "#student.id != null"),
+            @CacheEvict(cacheNames = CacheConfig.FACULTY_STUDENTS, allEntries = true)
+    })
     public Student editStud(Student student) {
         return studentRepository.save(student);
     }
 
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.STUDENTS, key = "#id"),
+            @CacheEvict(cacheNames = CacheConfig.STUDENT_FACULTY, key = "#id"),
+            @CacheEvict(cacheNames = CacheConfig.FACULTY_STUDENTS, allEntries = true)
+    })
     public void deleteStud(Long id) {
         studentRepository.deleteById(id);
 
     }
 
-    public Collection<Student> getAllStud() {
-        return studentRepository.findAll();
+    @Transactional
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.STUDENTS, allEntries = true),
+            @CacheEvict(cacheNames = CacheConfig.STUDENT_FACULTY, allEntries = true),
+            @CacheEvict(cacheNames = CacheConfig.FACULTY_STUDENTS, allEntries = true)
+    })
+    public int deleteStudents(Collection<Long> ids) {
+        int deleted = 0;
+        for (List<Long> batch : batches(ids)) {
+            List<Object[]> removed = studentRepository.findIdAndAgeByIdIn(batch);
+            deleted += studentRepository.deleteByIdIn(batch);
+            afterCommitRemoved(removed);
+        }
+        return deleted;
     }
 
-    public Collection<Student> getStudByAge(int age) {
-        return studentRepository.getStudByAge(age);
+    @Transactional
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.STUDENTS, allEntries = true),
+            @CacheEvict(cacheNames = CacheConfig.STUDENT_FACULTY, allEntries = true),
+            @CacheEvict(cacheNames = CacheConfig.FACULTY_STUDENTS, allEntries = true)
+    })
+    public int deleteStudentsOlderThan(int age) {
+        List<Object[]> removed = studentRepository.findIdAndAgeByAgeGreaterThan(age);
+        List<Long> ids = new ArrayList<>(removed.size());
+        for (Object[] row : removed) {
+            ids.add(((Number) row[0]).longValue());
+        }
+        int deleted = 0;
+        for (List<Long> batch : batches(ids)) {
+            deleted += studentRepository.deleteByIdIn(batch);
+        }
+        afterCommitRemoved(removed);
+        return deleted;
     }
 
-    public Collection<Student> getStudentsAgeBetween(int minAge, int maxAge) {
-        return studentRepository.findStudByAgeBetween(minAge, maxAge);
+    @Transactional
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.STUDENTS, allEntries = true),
+            @CacheEvict(cacheNames = CacheConfig.STUDENT_FACULTY, allEntries = true),
+            @CacheEvict(cacheNames = CacheConfig.FACULTY_STUDENTS, allEntries = true)
+    })
+    public int assignFaculty(Long facultyId, Collection<Long> ids) {
+        Faculty faculty = facultyRepository.findById(facultyId)
+                .orElseThrow(NoSuchElementException::new);
+        int updated = 0;
+        for (List<Long> batch : batches(ids)) {
+            updated += studentRepository.assignFaculty(faculty, batch);
+        }
+        FacultyDto assigned = FacultyDto.of(faculty);
+        afterCommit(() -> recentStudents.facultyAssigned(ids, assigned));
+        return updated;
     }
 
+    @Transactional(readOnly = true)
+    public Collection<StudentDto> getAllStud() {
+        return studentRepository.findAllDtos();
+    }
 
-    public Collection<Student> getByFacultyId(Long id) {
-        return facultyRepository.findById(id)
-                .map(Faculty::getStudents)
-                .orElseThrow(NoSuchElementException::new);
+    public void forEachStud(Consumer<Student> action) {
+        entityStreamer.forEach(studentRepository::streamAll, action);
+    }
+
+    @Transactional(readOnly = true)
+    public CursorPage<StudentDto> getStudentsPage(String cursor, int size) {
+        long lastId = CursorPage.decode(cursor);
+        return CursorPage.of(studentRepository.findDtosAfter(lastId, PageRequest.of(0, size)), StudentDto::getId);
+    }
+
+    @Transactional(readOnly = true)
+    public Collection<StudentDto> getStudByAge(int age) {
+        return getStudentsAgeBetween(age, age);
+    }
+
+    @Transactional(readOnly = true)
+    public Collection<StudentDto> getStudentsAgeBetween(int minAge, int maxAge) {
+        long[] ids = studentAgeIndex.idsBetween(minAge, maxAge);
+        return ids == null ? studentRepository.findDtosByAgeBetween(minAge, maxAge) : hydrate(ids);
+    }
+
+
+    @Transactional(readOnly = true)
+    public List<StudentDto> searchByName(String query, int limit) {
+        long[] ids = studentNameIndex.search(query, limit);
+        if (ids != null) {
+            return hydrate(ids);
+        }
+        // until the index is built, names containing the longest word are paged in and checked word by word
+        List<String> terms = StudentNameIndex.tokens(query);
+        List<StudentDto> students = new ArrayList<>(limit);
+        if (terms.isEmpty()) {
+            return students;
+        }
+        String longest = terms.stream().max(Comparator.comparingInt(String::length)).orElseThrow();
+        for (int page = 0; students.size() < limit; page++) {
+            List<StudentDto> rows = studentRepository.findDtosByNameLike("%" + longest + "%",
+                    PageRequest.of(page, SEARCH_FALLBACK_BATCH));
+            for (StudentDto row : rows) {
+                if (students.size() < limit && StudentNameIndex.matchesPrefixes(terms, row.getName())) {
+                    students.add(row);
+                }
+            }
+            if (rows.size() < SEARCH_FALLBACK_BATCH) {
+                break;
+            }
+        }
+        return students;
+    }
+
+    @Cacheable(cacheNames = CacheConfig.FACULTY_STUDENTS, key = "#id")
+    @Transactional(readOnly = true)
+    public Collection<StudentDto> getByFacultyId(Long id) {
+        List<StudentDto> students = studentRepository.findDtosByFacultyId(id);
+        if (students.isEmpty() && !facultyRepository.existsById(id)) {
+            throw new NoSuchElementException();
+        }
+        return students;
     }
 
     public Long getCountOfStudents() {
-        return studentRepository.getCountOfStudents();
+        return studentStatistics.getCount();
     }
 
     public Double getAverageAgeOfStudents() {
-        return studentRepository.getAverageAgeOfStudents();
+        return studentStatistics.getAverageAge();
+    }
+
+    public StudentAgeStatistics getAgeStatistics() {
+        return studentStatistics.snapshot();
+    }
+
+    private List<StudentDto> hydrate(long[] ids) {
+        Map<Long, StudentDto> found = new HashMap<>(ids.length * 2);
+        for (int from = 0; from < ids.length; from += HYDRATE_BATCH) {
+            List<Long> batch = new ArrayList<>(Math.min(HYDRATE_BATCH, ids.length - from));
+            for (int i = from; i < Math.min(from + HYDRATE_BATCH, ids.length); i++) {
+                batch.add(ids[i]);
+            }
+            for (StudentDto student : studentRepository.findDtosByIdIn(batch)) {
+                found.put(student.getId(), student);
+            }
+        }
+        List<StudentDto> students = new ArrayList<>(found.size());
+        for (long id : ids) {
+            StudentDto student = found.get(id);
+            if (student != null) {
+                students.add(student);
+            }
+        }
+        return students;
+    }
+
+    private static List<List<Long>> batches(Collection<Long> ids) {
+        List<Long> distinct = new ArrayList<>(new LinkedHashSet<>(ids));
+        List<List<Long>> batches = new ArrayList<>();
+        for (int from = 0; from < distinct.size(); from += BULK_BATCH) {
+            batches.add(distinct.subList(from, Math.min(from + BULK_BATCH, distinct.size())));
+        }
+        return batches;
+    }
+
+    // bulk statements bypass the entity listener, so the in-memory statistics and indexes are told explicitly
+    private void afterCommitRemoved(List<Object[]> rows) {
+        Runnable action = () -> {
+            for (Object[] row : rows) {
+                long id = ((Number) row[0]).longValue();
+                int age = ((Number) row[1]).intValue();
+                studentStatistics.removed(age);
+                studentAgeIndex.removed(id, age);
+                studentNameIndex.remove(id);
+                recentStudents.removed(id);
+            }
+        };
+        afterCommit(action);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    public List<StudentDto> findLastFiveStudents() {
+        return findRecentStudents(5);
     }
 
-    public List<Student> findLastFiveStudents() {
-        PageRequest pageRequest = PageRequest.of(0, 5);
-        Page<Student> studentsPage = studentRepository.findLastFiveStudents(pageRequest);
-        return studentsPage.getContent();
+    public List<StudentDto> findRecentStudents(int n) {
+        List<StudentDto> students = recentStudents.latest(n);
+        return students != null ? students : studentRepository.findLatestDtos(PageRequest.of(0, n));
     }
 }
 
@@ -0,0 +1,129 @@
+package ru.hogwarts.school.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.hogwarts.school.dto.StudentAgeStatistics;
+import ru.hogwarts.school.repository.StudentRepository;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+
+@Component
+public class StudentStatistics {
+    private static final Logger logger = LoggerFactory.getLogger(StudentStatistics.class);
+
+    private final StudentRepository studentRepository;
+    private final TreeMap<Integer, Long> histogram = new TreeMap<>();
+    private long count;
+    private long ageSum;
+    // changes seen while a reconcile scans the table, applied to the fresh histogram before it is installed
+    private TreeMap<Integer, Long> pending;
+    private long pendingCount;
+    private long pendingSum;
+
+    public StudentStatistics(StudentRepository studentRepository) {
+        this.studentRepository = studentRepository;
+    }
+
+    public synchronized void added(int age) {
+        histogram.merge(age, 1L, Long::sum);
+        count++;
+        ageSum += age;
+        if (pending != null) {
+            pending.merge(age, 1L, Long::sum);
+            pendingCount++;
+            pendingSum += age;
+        }
+    }
+
+    public synchronized void removed(int age) {
+        histogram.computeIfPresent(age, (key, value) -> value > 1 ? value - 1 : null);
+        count = Math.max(0, count - 1);
+        ageSum -= age;
+        if (pending != null) {
+            pending.merge(age, -1L, Long::sum);
+            pendingCount--;
+            pendingSum -= age;
+        }
+    }
+
+    public synchronized void changed(int oldAge, int newAge) {
+        if (oldAge == newAge) {
+            return;
+        }
+        removed(oldAge);
+        added(newAge);
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized Double getAverageAge() {
+        return count == 0 ? null : (double) ageSum / count;
+    }
+
+    public synchronized StudentAgeStatistics snapshot() {
+        return new StudentAgeStatistics(count, getAverageAge(),
+                histogram.isEmpty() ? null : histogram.firstKey(),
+                histogram.isEmpty() ? null : histogram.lastKey(),
+                Collections.unmodifiableMap(new TreeMap<>(histogram)));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void seed() {
+        reconcile();
+    }
+
+    @Scheduled(fixedDelayString = "${student.statistics.reconcile-interval-ms:600000}",
+            initialDelayString = "${student.statistics.reconcile-interval-ms:600000}")
+    public void reconcile() {
+        synchronized (this) {
+            if (pending != null) {
+                logger.debug("Student statistics are already being reconciled");
+                return;
+            }
+            pending = new TreeMap<>();
+            pendingCount = 0;
+            pendingSum = 0;
+        }
+        List<Object[]> rows;
+        try {
+            rows = studentRepository.countByAge();
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                pending = null;
+            }
+            throw e;
+        }
+        TreeMap<Integer, Long> fresh = new TreeMap<>();
+        long freshCount = 0;
+        long freshSum = 0;
+        for (Object[] row : rows) {
+            int age = ((Number) row[0]).intValue();
+            long students = ((Number) row[1]).longValue();
+            fresh.put(age, students);
+            freshCount += students;
+            freshSum += age * students;
+        }
+        synchronized (this) {
+            pending.forEach((age, delta) -> fresh.merge(age, delta, Long::sum));
+            fresh.values().removeIf(students -> students <= 0);
+            freshCount = Math.max(0, freshCount + pendingCount);
+            freshSum += pendingSum;
+            pending = null;
+            if (freshCount != count || freshSum != ageSum) {
+                logger.info("Student statistics drifted (count {} -> {}), reconciled", count, freshCount);
+            }
+            histogram.clear();
+            histogram.putAll(fresh);
+            count = freshCount;
+            ageSum = freshSum;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package ru.hogwarts.school.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+
+public interface AvatarStorage {
+
+    String store(String hash, Path source) throws IOException;
+
+    boolean contains(String hash);
+
+    long size(String hash) throws IOException;
+
+    void transferTo(String hash, long position, long count, WritableByteChannel target) throws IOException;
+
+    InputStream open(String hash) throws IOException;
+
+    /**
+     * Returns the file that holds exactly the content of {@code hash}, or {@code null} when the backend does not keep
+     * one file per avatar and the content cannot be handed to the container for sendfile.
+     */
+    Path file(String hash);
+
+    void delete(String hash) throws IOException;
+
+    String location(String hash);
+}
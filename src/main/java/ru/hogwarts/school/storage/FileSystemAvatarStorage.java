@@ -0,0 +1,82 @@
+package ru.hogwarts.school.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+@Component
+@ConditionalOnProperty(name = "avatar.storage.backend", havingValue = "file", matchIfMissing = true)
+public class FileSystemAvatarStorage implements AvatarStorage {
+    private final Path root;
+
+    public FileSystemAvatarStorage(@Value("${path.to.avatars.folder}") Path root) {
+        this.root = root;
+    }
+
+    @Override
+    public String store(String hash, Path source) throws IOException {
+        Path target = path(hash);
+        Files.createDirectories(target.getParent());
+        Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return location(hash);
+    }
+
+    @Override
+    public boolean contains(String hash) {
+        return Files.exists(path(hash));
+    }
+
+    @Override
+    public long size(String hash) throws IOException {
+        return Files.size(path(hash));
+    }
+
+    @Override
+    public void transferTo(String hash, long position, long count, WritableByteChannel target) throws IOException {
+        try (FileChannel channel = FileChannel.open(path(hash), StandardOpenOption.READ)) {
+            while (count > 0) {
+                long written = channel.transferTo(position, count, target);
+                if (written <= 0) {
+                    throw new EOFException("Avatar " + hash + " ended " + count + " bytes before the requested range");
+                }
+                position += written;
+                count -= written;
+            }
+        }
+    }
+
+    @Override
+    public InputStream open(String hash) throws IOException {
+        return Files.newInputStream(path(hash));
+    }
+
+    @Override
+    public Path file(String hash) {
+        Path path = path(hash);
+        return Files.isRegularFile(path) ? path.toAbsolutePath() : null;
+    }
+
+    @Override
+    public void delete(String hash) throws IOException {
+        Files.deleteIfExists(path(hash));
+    }
+
+    @Override
+    public String location(String hash) {
+        return path(hash).toAbsolutePath().toString();
+    }
+
+    private Path path(String hash) {
+        return root.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+}
@@ -0,0 +1,471 @@
+package ru.hogwarts.school.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Appends avatars to large segment files and serves them from memory-mapped slices.
+ * Record layout: magic, type (put/delete), hex SHA-256, data length, data. A delete record carries the id of the
+ * segment holding the put it cancels, so compaction can drop it once that segment is gone.
+ */
+@Component
+@ConditionalOnProperty(name = "avatar.storage.backend", havingValue = "pack")
+public class PackAvatarStorage implements AvatarStorage {
+    private static final Logger logger = LoggerFactory.getLogger(PackAvatarStorage.class);
+
+    private static final int MAGIC = 0x41564154;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final int HASH_LENGTH = 64;
+    private static final int HEADER_SIZE = 4 + 1 + HASH_LENGTH + 8;
+    private static final int TOMBSTONE_SIZE = 4;
+    private static final int UNKNOWN_SEGMENT = 0;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.pack");
+
+    private final Path directory;
+    private final long segmentSize;
+    private final double compactionThreshold;
+    private final int mapChunkSize;
+    private final ConcurrentHashMap<String, Location> index = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Segment> segments = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    private volatile Segment active;
+
+    public PackAvatarStorage(@Value("${path.to.avatars.folder}") Path root,
+                             @Value("${avatar.storage.pack.segment-size:268435456}") long segmentSize,
+                             @Value("${avatar.storage.pack.compaction-threshold:0.5}") double compactionThreshold,
+                             @Value("${avatar.storage.pack.map-chunk-size:67108864}") int mapChunkSize) {
+        if (segmentSize <= HEADER_SIZE || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("avatar.storage.pack.segment-size must be below 2GB");
+        }
+        if (mapChunkSize <= 0) {
+            throw new IllegalArgumentException("avatar.storage.pack.map-chunk-size must be positive");
+        }
+        this.directory = root.resolve("pack");
+        this.segmentSize = segmentSize;
+        this.compactionThreshold = compactionThreshold;
+        this.mapChunkSize = mapChunkSize;
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream.filter(path -> SEGMENT_NAME.matcher(path.getFileName().toString()).matches())
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        synchronized (writeLock) {
+            for (Path file : files) {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                matcher.matches();
+                Segment segment = new Segment(Integer.parseInt(matcher.group(1)), file, mapChunkSize);
+                segments.put(segment.id, segment);
+                recover(segment);
+                active = segment;
+            }
+            if (active == null) {
+                active = newSegment(1);
+            }
+        }
+        logger.info("Avatar pack store opened: {} segments, {} avatars", segments.size(), index.size());
+    }
+
+    @Override
+    public String store(String hash, Path source) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            long length = in.size();
+            synchronized (writeLock) {
+                if (index.containsKey(hash)) {
+                    return location(hash);
+                }
+                Segment segment = activeFor(HEADER_SIZE + length);
+                long position = segment.end;
+                writeHeader(segment, position, PUT, hash, length);
+                long copied = 0;
+                while (copied < length) {
+                    long read = segment.channel.transferFrom(in, position + HEADER_SIZE + copied, length - copied);
+                    if (read <= 0) {
+                        throw new EOFException("Unexpected end of " + source);
+                    }
+                    copied += read;
+                }
+                segment.channel.force(false);
+                segment.end = position + HEADER_SIZE + length;
+                putIndex(hash, new Location(segment.id, position + HEADER_SIZE, length));
+            }
+        }
+        return location(hash);
+    }
+
+    @Override
+    public boolean contains(String hash) {
+        return index.containsKey(hash);
+    }
+
+    @Override
+    public long size(String hash) throws IOException {
+        Location location = index.get(hash);
+        if (location == null) {
+            throw new NoSuchFileException(hash);
+        }
+        return location.length;
+    }
+
+    @Override
+    public void transferTo(String hash, long position, long count, WritableByteChannel target) throws IOException {
+        ByteBuffer buffer = slice(hash);
+        buffer.limit((int) (position + count));
+        buffer.position((int) position);
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
+
+    @Override
+    public InputStream open(String hash) throws IOException {
+        return new ByteBufferInputStream(slice(hash));
+    }
+
+    @Override
+    public Path file(String hash) {
+        // segments are shared and may be compacted away before the container opens them
+        return null;
+    }
+
+    @Override
+    public void delete(String hash) throws IOException {
+        synchronized (writeLock) {
+            Location location = index.remove(hash);
+            if (location == null) {
+                return;
+            }
+            writeTombstone(hash, location.segment);
+            active.channel.force(false);
+            Segment previous = segments.get(location.segment);
+            if (previous != null) {
+                previous.liveBytes.addAndGet(-location.length);
+            }
+        }
+    }
+
+    @Override
+    public String location(String hash) {
+        return "pack:" + hash;
+    }
+
+    @Scheduled(fixedDelayString = "${avatar.storage.pack.compaction-interval-ms:3600000}")
+    public void compact() {
+        List<Segment> candidates = new ArrayList<>(segments.values());
+        candidates.sort(Comparator.comparingInt(segment -> segment.id));
+        for (Segment segment : candidates) {
+            if (segment == active || segment.end == 0
+                    || (double) segment.liveBytes.get() / segment.end >= compactionThreshold) {
+                continue;
+            }
+            try {
+                compact(segment);
+            } catch (IOException e) {
+                logger.warn("Cannot compact avatar pack segment {}", segment.path, e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        synchronized (writeLock) {
+            for (Segment segment : segments.values()) {
+                segment.channel.close();
+            }
+        }
+    }
+
+    private void compact(Segment segment) throws IOException {
+        synchronized (writeLock) {
+            boolean olderSegmentExists = segments.keySet().stream().anyMatch(id -> id < segment.id);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            long position = 0;
+            long reclaimed = segment.end;
+            while (position + HEADER_SIZE <= segment.end) {
+                readHeader(segment, position, header);
+                header.getInt();
+                byte type = header.get();
+                String hash = readHash(header);
+                long length = header.getLong();
+                long dataStart = position + HEADER_SIZE;
+
+                Location location = index.get(hash);
+                if (type == PUT && location != null && location.segment == segment.id && location.offset == dataStart) {
+                    Segment target = activeFor(HEADER_SIZE + length);
+                    long targetPosition = target.end;
+                    writeHeader(target, targetPosition, PUT, hash, length);
+                    segment.channel.position(dataStart);
+                    long copied = 0;
+                    while (copied < length) {
+                        long read = target.channel.transferFrom(segment.channel, targetPosition + HEADER_SIZE + copied, length - copied);
+                        if (read <= 0) {
+                            throw new EOFException("Unexpected end of " + segment.path);
+                        }
+                        copied += read;
+                    }
+                    target.end = targetPosition + HEADER_SIZE + length;
+                    putIndex(hash, new Location(target.id, targetPosition + HEADER_SIZE, length));
+                    reclaimed -= HEADER_SIZE + length;
+                } else if (type == DELETE && !index.containsKey(hash)) {
+                    int cancelled = length == TOMBSTONE_SIZE ? readInt(segment, dataStart) : UNKNOWN_SEGMENT;
+                    // the tombstone is only needed while the segment holding the cancelled put still exists
+                    boolean needed = cancelled == UNKNOWN_SEGMENT
+                            ? olderSegmentExists
+                            : cancelled != segment.id && segments.containsKey(cancelled);
+                    if (needed) {
+                        writeTombstone(hash, cancelled);
+                        reclaimed -= HEADER_SIZE + TOMBSTONE_SIZE;
+                    }
+                }
+                position = dataStart + length;
+            }
+            active.channel.force(false);
+            segments.remove(segment.id);
+            segment.channel.close();
+            Files.deleteIfExists(segment.path);
+            logger.info("Compacted avatar pack segment {}, reclaimed {} bytes", segment.path, reclaimed);
+        }
+    }
+
+    private void recover(Segment segment) throws IOException {
+        long size = segment.channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        long position = 0;
+        while (position + HEADER_SIZE <= size) {
+            readHeader(segment, position, header);
+            if (header.getInt() != MAGIC) {
+                break;
+            }
+            byte type = header.get();
+            String hash = readHash(header);
+            long length = header.getLong();
+            long dataStart = position + HEADER_SIZE;
+            if (length < 0 || dataStart + length > size) {
+                break;
+            }
+            if (type == PUT) {
+                putIndex(hash, new Location(segment.id, dataStart, length));
+            } else {
+                Location removed = index.remove(hash);
+                if (removed != null) {
+                    segments.get(removed.segment).liveBytes.addAndGet(-removed.length);
+                }
+            }
+            position = dataStart + length;
+        }
+        if (position < size) {
+            logger.warn("Truncating torn tail of avatar pack segment {} at {}", segment.path, position);
+            segment.channel.truncate(position);
+        }
+        segment.end = position;
+    }
+
+    private void putIndex(String hash, Location location) {
+        Location previous = index.put(hash, location);
+        if (previous != null) {
+            Segment segment = segments.get(previous.segment);
+            if (segment != null) {
+                segment.liveBytes.addAndGet(-previous.length);
+            }
+        }
+        segments.get(location.segment).liveBytes.addAndGet(location.length);
+    }
+
+    private ByteBuffer slice(String hash) throws IOException {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            Location location = index.get(hash);
+            if (location == null) {
+                break;
+            }
+            Segment segment = segments.get(location.segment);
+            if (segment == null) {
+                continue;
+            }
+            try {
+                return segment.slice(location.offset, location.length);
+            } catch (ClosedChannelException e) {
+                // the segment was compacted away, the index already points at the new copy
+            }
+        }
+        throw new NoSuchFileException(hash);
+    }
+
+    private Segment activeFor(long recordSize) throws IOException {
+        if (active.end > 0 && active.end + recordSize > segmentSize) {
+            active.channel.force(false);
+            active = newSegment(active.id + 1);
+        }
+        return active;
+    }
+
+    private Segment newSegment(int id) throws IOException {
+        Segment segment = new Segment(id, directory.resolve(String.format("segment-%06d.pack", id)), mapChunkSize);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private void writeTombstone(String hash, int cancelledSegment) throws IOException {
+        Segment segment = activeFor(HEADER_SIZE + TOMBSTONE_SIZE);
+        long position = segment.end;
+        writeHeader(segment, position, DELETE, hash, TOMBSTONE_SIZE);
+        ByteBuffer payload = ByteBuffer.allocate(TOMBSTONE_SIZE).putInt(cancelledSegment).flip();
+        long payloadPosition = position + HEADER_SIZE;
+        while (payload.hasRemaining()) {
+            payloadPosition += segment.channel.write(payload, payloadPosition);
+        }
+        segment.end = position + HEADER_SIZE + TOMBSTONE_SIZE;
+    }
+
+    private static int readInt(Segment segment, long position) throws IOException {
+        ByteBuffer value = ByteBuffer.allocate(Integer.BYTES);
+        while (value.hasRemaining()) {
+            if (segment.channel.read(value, position + value.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        return value.flip().getInt();
+    }
+
+    private static void writeHeader(Segment segment, long position, byte type, String hash, long length) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).put(type).put(hash.getBytes(StandardCharsets.US_ASCII)).putLong(length).flip();
+        while (header.hasRemaining()) {
+            position += segment.channel.write(header, position);
+        }
+    }
+
+    private static void readHeader(Segment segment, long position, ByteBuffer header) throws IOException {
+        header.clear();
+        while (header.hasRemaining()) {
+            if (segment.channel.read(header, position + header.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        header.flip();
+    }
+
+    private static String readHash(ByteBuffer header) {
+        byte[] hash = new byte[HASH_LENGTH];
+        header.get(hash);
+        return new String(hash, StandardCharsets.US_ASCII);
+    }
+
+    private static final class Location {
+        private final int segment;
+        private final long offset;
+        private final long length;
+
+        private Location(int segment, long offset, long length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static final class Segment {
+        private final int id;
+        private final Path path;
+        private final FileChannel channel;
+        private final AtomicLong liveBytes = new AtomicLong();
+        private final int chunkSize;
+        private final ConcurrentHashMap<Integer, MappedByteBuffer> chunks = new ConcurrentHashMap<>();
+        private volatile long end;
+
+        private Segment(int id, Path path, int chunkSize) throws IOException {
+            this.id = id;
+            this.path = path;
+            this.chunkSize = chunkSize;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        /**
+         * Serves a record from the fixed-size chunk it lies in. Full chunks are mapped once; only the chunk at the
+         * growing tail is remapped, and records straddling a chunk boundary get a mapping of their own.
+         */
+        private ByteBuffer slice(long offset, long length) throws IOException {
+            int chunk = (int) (offset / chunkSize);
+            long chunkStart = (long) chunk * chunkSize;
+            if (offset + length > chunkStart + chunkSize) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+            }
+            MappedByteBuffer mapping = chunks.get(chunk);
+            if (mapping == null || chunkStart + mapping.capacity() < offset + length) {
+                synchronized (this) {
+                    mapping = chunks.get(chunk);
+                    if (mapping == null || chunkStart + mapping.capacity() < offset + length) {
+                        mapping = channel.map(FileChannel.MapMode.READ_ONLY, chunkStart,
+                                Math.min(chunkSize, end - chunkStart));
+                        chunks.put(chunk, mapping);
+                    }
+                }
+            }
+            ByteBuffer buffer = mapping.duplicate();
+            buffer.limit((int) (offset - chunkStart + length));
+            buffer.position((int) (offset - chunkStart));
+            return buffer.slice();
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
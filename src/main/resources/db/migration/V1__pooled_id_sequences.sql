@@ -0,0 +1,31 @@
+-- Ids are generated from pooled sequences instead of identity columns.
+-- Each sequence advances by the allocationSize declared on its entity.
+CREATE SEQUENCE IF NOT EXISTS faculty_seq START WITH 1 INCREMENT BY 10;
+CREATE SEQUENCE IF NOT EXISTS student_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS avatar_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS avatar_content_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS avatar_variant_seq START WITH 1 INCREMENT BY 50;
+
+-- Existing tables keep their ids: identity columns and serial defaults left over from identity
+-- generation are removed, then the next pool starts right after the current maximum.
+-- Identity columns reject DROP DEFAULT, so DROP IDENTITY runs first; each step is a no-op for the other kind.
+DO $$
+DECLARE
+    t record;
+BEGIN
+    FOR t IN SELECT * FROM (VALUES
+            ('faculty', 'faculty_seq', 10),
+            ('student', 'student_seq', 50),
+            ('avatar', 'avatar_seq', 50),
+            ('avatar_content', 'avatar_content_seq', 50),
+            ('avatar_variant', 'avatar_variant_seq', 50)) AS s(table_name, sequence_name, step)
+    LOOP
+        IF to_regclass(t.table_name) IS NOT NULL THEN
+            EXECUTE format('ALTER TABLE %I ALTER COLUMN id DROP IDENTITY IF EXISTS', t.table_name);
+            EXECUTE format('ALTER TABLE %I ALTER COLUMN id DROP DEFAULT', t.table_name);
+            EXECUTE format('DROP SEQUENCE IF EXISTS %I', t.table_name || '_id_seq');
+            EXECUTE format('SELECT setval(%L, COALESCE((SELECT MAX(id) FROM %I), 0) + %s, false)',
+                    t.sequence_name, t.table_name, t.step);
+        END IF;
+    END LOOP;
+END $$;
@@ -0,0 +1,32 @@
+-- Avatars share content rows by hash; drop the unique key left on avatar.content_id
+-- by the former one-to-one mapping, whether it was created as a constraint or a plain index.
+DO $$
+DECLARE
+    c record;
+    i record;
+BEGIN
+    IF to_regclass('avatar') IS NOT NULL THEN
+        FOR c IN SELECT con.conname
+                 FROM pg_constraint con
+                 JOIN pg_attribute a ON a.attrelid = con.conrelid AND a.attnum = ANY (con.conkey)
+                 WHERE con.conrelid = to_regclass('avatar')
+                   AND con.contype = 'u'
+                   AND cardinality(con.conkey) = 1
+                   AND a.attname = 'content_id'
+        LOOP
+            EXECUTE format('ALTER TABLE avatar DROP CONSTRAINT %I', c.conname);
+        END LOOP;
+        FOR i IN SELECT ic.relname
+                 FROM pg_index x
+                 JOIN pg_class ic ON ic.oid = x.indexrelid
+                 JOIN pg_attribute a ON a.attrelid = x.indrelid AND a.attnum = x.indkey[0]
+                 WHERE x.indrelid = to_regclass('avatar')
+                   AND x.indisunique
+                   AND NOT x.indisprimary
+                   AND x.indnatts = 1
+                   AND a.attname = 'content_id'
+        LOOP
+            EXECUTE format('DROP INDEX %I', i.relname);
+        END LOOP;
+    END IF;
+END $$;
@@ -0,0 +1,11 @@
+-- Case-folded copies of faculty name and color, so that case-insensitive lookups can use plain b-tree indexes.
+DO $$
+BEGIN
+    IF to_regclass('faculty') IS NOT NULL THEN
+        ALTER TABLE faculty ADD COLUMN IF NOT EXISTS name_key varchar(255);
+        ALTER TABLE faculty ADD COLUMN IF NOT EXISTS color_key varchar(255);
+        UPDATE faculty SET name_key = lower(name), color_key = lower(color);
+        CREATE INDEX IF NOT EXISTS faculty_name_key_idx ON faculty (name_key);
+        CREATE INDEX IF NOT EXISTS faculty_color_key_idx ON faculty (color_key);
+    END IF;
+END $$;
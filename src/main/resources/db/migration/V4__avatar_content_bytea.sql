@@ -0,0 +1,16 @@
+-- Inline avatar content is stored as bytea. Columns created as an oid large object reference are
+-- converted, and the large objects they pointed at are unlinked so pg_largeobject does not keep them.
+DO $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM information_schema.columns
+               WHERE table_name = 'avatar_content' AND column_name = 'data' AND data_type = 'oid') THEN
+        ALTER TABLE avatar_content ADD COLUMN data_bytes bytea;
+        UPDATE avatar_content SET data_bytes = lo_get(data) WHERE data IS NOT NULL;
+        PERFORM lo_unlink(data) FROM avatar_content WHERE data IS NOT NULL;
+        -- rows deleted or moved to storage earlier left their objects behind; the application owns no others
+        PERFORM lo_unlink(m.oid) FROM pg_largeobject_metadata m
+        WHERE m.lomowner = (SELECT oid FROM pg_roles WHERE rolname = current_user);
+        ALTER TABLE avatar_content DROP COLUMN data;
+        ALTER TABLE avatar_content RENAME COLUMN data_bytes TO data;
+    END IF;
+END $$;
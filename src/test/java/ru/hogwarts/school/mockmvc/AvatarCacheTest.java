@@ -0,0 +1,99 @@
+package ru.hogwarts.school.mockmvc;
+
+import org.junit.jupiter.api.Test;
+import ru.hogwarts.school.dto.AvatarMeta;
+import ru.hogwarts.school.dto.CachedAvatar;
+import ru.hogwarts.school.services.AvatarCache;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AvatarCacheTest {
+
+    @Test
+    void putAfterInvalidateIsDroppedTest() {
+        AvatarCache cache = new AvatarCache(1024 * 1024, 1024, new int[]{64, 128, 256});
+        long generation = cache.generation(1L);
+        CachedAvatar stale = avatar("old");
+
+        cache.invalidate(1L);
+        cache.put(1L, null, stale, generation);
+
+        assertThat(cache.getIfPresent(1L, null)).isNull();
+
+        CachedAvatar fresh = avatar("new");
+        cache.put(1L, null, fresh, cache.generation(1L));
+        assertThat(cache.getIfPresent(1L, null)).isSameAs(fresh);
+    }
+
+    @Test
+    void sizesShareTheirVariantEntryTest() {
+        AvatarCache cache = new AvatarCache(1024 * 1024, 1024, new int[]{256, 64, 128});
+        CachedAvatar thumbnail = avatar("thumbnail");
+        CachedAvatar original = avatar("original");
+
+        cache.put(1L, 1, thumbnail, cache.generation(1L));
+        cache.put(1L, 300, original, cache.generation(1L));
+
+        assertThat(cache.variantSize(65)).isEqualTo(128);
+        assertThat(cache.getIfPresent(1L, 2)).isSameAs(thumbnail);
+        assertThat(cache.getIfPresent(1L, 64)).isSameAs(thumbnail);
+        assertThat(cache.getIfPresent(1L, 65)).isNull();
+        assertThat(cache.getIfPresent(1L, null)).isSameAs(original);
+        assertThat(cache.statistics().getSize()).isEqualTo(2L);
+
+        cache.invalidate(1L);
+
+        assertThat(cache.getIfPresent(1L, 1)).isNull();
+        assertThat(cache.getIfPresent(1L, null)).isNull();
+    }
+
+    @Test
+    void concurrentSaveAndReadTest() throws Exception {
+        AvatarCache cache = new AvatarCache(1024 * 1024, 1024, new int[]{64, 128, 256});
+        AtomicReference<String> stored = new AtomicReference<>("v0");
+        AtomicBoolean writing = new AtomicBoolean(true);
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+        List<Future<?>> reads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            reads.add(readers.submit(() -> {
+                while (writing.get()) {
+                    if (cache.getIfPresent(1L, null) == null) {
+                        long generation = cache.generation(1L);
+                        CachedAvatar loaded = avatar(stored.get());
+                        Thread.yield();
+                        cache.put(1L, null, loaded, generation);
+                    }
+                }
+            }));
+        }
+        for (int version = 1; version <= 2000; version++) {
+            stored.set("v" + version);
+            cache.invalidate(1L);
+        }
+        writing.set(false);
+        for (Future<?> read : reads) {
+            read.get(10, TimeUnit.SECONDS);
+        }
+        readers.shutdown();
+
+        CachedAvatar cached = cache.getIfPresent(1L, null);
+        if (cached != null) {
+            assertThat(new String(cached.getData())).isEqualTo("v2000");
+        }
+    }
+
+    private static CachedAvatar avatar(String content) {
+        AvatarMeta meta = new AvatarMeta(1L, content, Instant.EPOCH, "image/png", content.length(), null);
+        return new CachedAvatar(meta, content.getBytes());
+    }
+}
@@ -0,0 +1,269 @@
+package ru.hogwarts.school.mockmvc;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import ru.hogwarts.school.controller.AvatarController;
+import ru.hogwarts.school.dto.AvatarInfo;
+import ru.hogwarts.school.dto.AvatarMeta;
+import ru.hogwarts.school.dto.CachedAvatar;
+import ru.hogwarts.school.model.AvatarTier;
+import ru.hogwarts.school.services.AvatarExportService;
+import ru.hogwarts.school.services.AvatarService;
+import ru.hogwarts.school.services.AvatarStreamService;
+import ru.hogwarts.school.storage.AvatarStorage;
+import ru.hogwarts.school.storage.FileSystemAvatarStorage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(controllers = AvatarController.class, properties = "avatar.sendfile.min-bytes=4")
+public class AvatarControllerTest {
+    static final Path STORAGE_ROOT = createStorageRoot();
+
+    @TestConfiguration
+    static class StorageConfig {
+        @Bean
+        AvatarStorage avatarStorage() {
+            return new FileSystemAvatarStorage(STORAGE_ROOT);
+        }
+    }
+
+    @MockBean
+    AvatarService avatarService;
+    @SpyBean
+    AvatarStreamService avatarStreamService;
+    @MockBean
+    AvatarExportService avatarExportService;
+    @Autowired
+    MockMvc mockMvc;
+
+    AvatarMeta meta;
+
+    static Path createStorageRoot() {
+        try {
+            return Files.createTempDirectory("avatars");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Path file = STORAGE_ROOT.resolve("ab").resolve("abc");
+        Files.createDirectories(file.getParent());
+        Files.write(file, "0123456789".getBytes(StandardCharsets.US_ASCII));
+        meta = new AvatarMeta(1L, "abc", Instant.parse("2023-09-01T10:00:00Z"), "image/png", 10, file.toString());
+        when(avatarService.getCached(1L, null)).thenReturn(new CachedAvatar(meta, null));
+    }
+
+    @Test
+    void fromDiskFullTest() throws Exception {
+        mockMvc.perform(get("/avatar/from-disk/1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 10))
+                .andExpect(content().contentType("image/png"))
+                .andExpect(content().string("0123456789"));
+    }
+
+    @Test
+    void fromDiskSingleRangeTest() throws Exception {
+        mockMvc.perform(get("/avatar/from-disk/1").header(HttpHeaders.RANGE, "bytes=2-5"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10"))
+                .andExpect(content().string("2345"));
+
+        mockMvc.perform(get("/avatar/from-disk/1").header(HttpHeaders.RANGE, "bytes=-3"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 7-9/10"))
+                .andExpect(content().string("789"));
+    }
+
+    @Test
+    void fromDiskMultiRangeTest() throws Exception {
+        MvcResult result = mockMvc.perform(get("/avatar/from-disk/1").header(HttpHeaders.RANGE, "bytes=0-1,8-"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, startsWith("multipart/byteranges; boundary=")))
+                .andReturn();
+
+        String body = result.getResponse().getContentAsString();
+        assertThat(body).contains("Content-Range: bytes 0-1/10\r\n\r\n01\r\n");
+        assertThat(body).contains("Content-Range: bytes 8-9/10\r\n\r\n89\r\n");
+        assertThat(result.getResponse().getContentLengthLong()).isEqualTo(body.length());
+    }
+
+    @Test
+    void fromDiskUnsatisfiableRangeTest() throws Exception {
+        mockMvc.perform(get("/avatar/from-disk/1").header(HttpHeaders.RANGE, "bytes=20-30"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */10"));
+    }
+
+    @Test
+    void fromDiskOverlappingRangesTest() throws Exception {
+        mockMvc.perform(get("/avatar/from-disk/1").header(HttpHeaders.RANGE, "bytes=0-3,2-5"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 0-5/10"))
+                .andExpect(content().string("012345"));
+
+        String amplified = String.join(",", Collections.nCopies(100, "0-"));
+        mockMvc.perform(get("/avatar/from-disk/1").header(HttpHeaders.RANGE, "bytes=" + amplified))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */10"));
+    }
+
+    @Test
+    void fromDiskSendfileTest() throws Exception {
+        mockMvc.perform(get("/avatar/from-disk/1").header(HttpHeaders.RANGE, "bytes=2-7")
+                        .requestAttr("org.apache.tomcat.sendfile.support", true))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 6))
+                .andExpect(request().attribute("org.apache.tomcat.sendfile.filename",
+                        STORAGE_ROOT.resolve("ab").resolve("abc").toAbsolutePath().toString()))
+                .andExpect(request().attribute("org.apache.tomcat.sendfile.start", 2L))
+                .andExpect(request().attribute("org.apache.tomcat.sendfile.end", 8L))
+                .andExpect(content().string(""));
+
+        mockMvc.perform(get("/avatar/from-disk/1").header(HttpHeaders.RANGE, "bytes=2-3")
+                        .requestAttr("org.apache.tomcat.sendfile.support", true))
+                .andExpect(request().attribute("org.apache.tomcat.sendfile.filename", nullValue()))
+                .andExpect(content().string("23"));
+    }
+
+    @Test
+    void getAvatarsPaginatedTest() throws Exception {
+        when(avatarService.findAvatarsPaginated(1, 2)).thenReturn(List.of(
+                new AvatarInfo(1L, 10, "image/png", 5L),
+                new AvatarInfo(2L, 20, "image/jpeg", 6L)
+        ));
+
+        mockMvc.perform(get("/avatar/paginate?page=1&size=2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].id").value(1))
+                .andExpect(jsonPath("$[0].studentId").value(5))
+                .andExpect(jsonPath("$[0].url").value("/avatar/1"))
+                .andExpect(jsonPath("$[1].mediaType").value("image/jpeg"))
+                .andExpect(jsonPath("$[0].data").doesNotExist());
+    }
+
+    @Test
+    void fromDiskVariantTest() throws Exception {
+        AvatarMeta variantMeta = new AvatarMeta(1L, "abc", meta.getLastModified(), "image/jpeg", 5, meta.getFilePath(), 64);
+        when(avatarService.getCached(1L, 64)).thenReturn(
+                new CachedAvatar(variantMeta, "thumb".getBytes(StandardCharsets.US_ASCII)));
+        when(avatarService.getCached(1L, 512)).thenReturn(new CachedAvatar(meta, null));
+
+        mockMvc.perform(get("/avatar/from-disk/1?size=64"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"abc-64\""))
+                .andExpect(content().contentType("image/jpeg"))
+                .andExpect(content().string("thumb"));
+
+        mockMvc.perform(get("/avatar/from-disk/1?size=512"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("image/png"))
+                .andExpect(content().string("0123456789"));
+    }
+
+    @Test
+    void conditionalGetTest() throws Exception {
+        mockMvc.perform(get("/avatar/from-disk/1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"abc\""))
+                .andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=86400, public"));
+
+        mockMvc.perform(get("/avatar/from-db/1").header(HttpHeaders.IF_NONE_MATCH, "\"abc\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        mockMvc.perform(get("/avatar/from-disk/1").header(HttpHeaders.IF_MODIFIED_SINCE, "Fri, 01 Sep 2023 10:00:00 GMT"))
+                .andExpect(status().isNotModified());
+
+        verify(avatarService, never()).readData(anyLong());
+        verify(avatarService, never()).getMeta(any(), any());
+    }
+
+    @Test
+    void fromDbTest() throws Exception {
+        mockMvc.perform(get("/avatar/from-db/1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"abc\""))
+                .andExpect(content().contentType("image/png"))
+                .andExpect(content().string("0123456789"));
+    }
+
+    @Test
+    void inlineTierTest() throws Exception {
+        AvatarMeta inlineMeta = new AvatarMeta(2L, "def", meta.getLastModified(), "image/png", 6, null,
+                AvatarTier.DATABASE);
+        when(avatarService.getCached(2L, null)).thenReturn(
+                new CachedAvatar(inlineMeta, "inline".getBytes(StandardCharsets.US_ASCII)));
+
+        mockMvc.perform(get("/avatar/2"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"def\""))
+                .andExpect(content().contentType("image/png"))
+                .andExpect(content().string("inline"));
+
+        mockMvc.perform(get("/avatar/from-disk/2"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("inline"));
+
+        verify(avatarStreamService, never()).stream(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void exportTest() throws Exception {
+        doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(2);
+            out.write("archive".getBytes(StandardCharsets.US_ASCII));
+            return null;
+        }).when(avatarExportService).export(eq(3L), eq(AvatarExportService.Format.TAR), any());
+
+        MvcResult result = mockMvc.perform(get("/avatar/export?format=tar&facultyId=3"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-tar"))
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"avatars-faculty-3.tar\""))
+                .andExpect(content().string("archive"));
+
+        mockMvc.perform(get("/avatar/export?format=rar"))
+                .andExpect(status().isBadRequest());
+    }
+}
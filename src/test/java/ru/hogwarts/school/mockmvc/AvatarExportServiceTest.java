@@ -0,0 +1,135 @@
+package ru.hogwarts.school.mockmvc;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.hogwarts.school.dto.AvatarExportEntry;
+import ru.hogwarts.school.model.AvatarTier;
+import ru.hogwarts.school.repository.AvatarContentRepository;
+import ru.hogwarts.school.repository.AvatarRepository;
+import ru.hogwarts.school.services.AvatarExportService;
+import ru.hogwarts.school.storage.FileSystemAvatarStorage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AvatarExportServiceTest {
+    private static final Instant MODIFIED = Instant.parse("2023-09-01T10:00:00Z");
+    private static final String STORED_HASH = String.format("%064d", 2);
+
+    @TempDir
+    Path root;
+
+    AvatarRepository avatarRepository = mock(AvatarRepository.class);
+    AvatarContentRepository avatarContentRepository = mock(AvatarContentRepository.class);
+    AvatarExportService exportService;
+    byte[] inline = "inline-avatar".getBytes(StandardCharsets.US_ASCII);
+    byte[] stored = new byte[700];
+
+    @BeforeEach
+    void setUp() throws Exception {
+        FileSystemAvatarStorage storage = new FileSystemAvatarStorage(root);
+        new Random(7).nextBytes(stored);
+        storage.store(STORED_HASH, Files.write(root.resolve("upload"), stored));
+        when(avatarContentRepository.findDataById(10L)).thenReturn(inline);
+        exportService = new AvatarExportService(avatarRepository, avatarContentRepository, storage,
+                mock(PlatformTransactionManager.class));
+    }
+
+    @Test
+    void zipTest() throws Exception {
+        when(avatarRepository.streamExport()).thenReturn(entries());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        exportService.export(null, AvatarExportService.Format.ZIP, out);
+
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                assertThat(entry.getTime()).isEqualTo(MODIFIED.toEpochMilli());
+                files.put(entry.getName(), zip.readAllBytes());
+            }
+        }
+        assertThat(files.keySet()).containsExactly("student-5/avatar-1.png", "student-6/avatar-2.jpeg");
+        assertThat(files.get("student-5/avatar-1.png")).isEqualTo(inline);
+        assertThat(files.get("student-6/avatar-2.jpeg")).isEqualTo(stored);
+    }
+
+    @Test
+    void tarTest() throws Exception {
+        when(avatarRepository.streamExportByFaculty(3L)).thenReturn(entries());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        exportService.export(3L, AvatarExportService.Format.TAR, out);
+
+        byte[] tar = out.toByteArray();
+        assertThat(tar.length % 512).isZero();
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        int position = 0;
+        while (!isZeroBlock(tar, position)) {
+            byte[] header = Arrays.copyOfRange(tar, position, position + 512);
+            assertThat(field(header, 257, 6)).isEqualTo("ustar");
+            assertThat(Long.parseLong(field(header, 136, 12), 8)).isEqualTo(MODIFIED.getEpochSecond());
+            assertThat(Long.parseLong(field(header, 148, 8).trim(), 8)).isEqualTo(checksum(header));
+            int size = Integer.parseInt(field(header, 124, 12), 8);
+            position += 512;
+            files.put(field(header, 0, 100), Arrays.copyOfRange(tar, position, position + size));
+            position += (size + 511) / 512 * 512;
+        }
+        assertThat(tar.length - position).isEqualTo(1024);
+        assertThat(isZeroBlock(tar, position + 512)).isTrue();
+        assertThat(files.keySet()).containsExactly("student-5/avatar-1.png", "student-6/avatar-2.jpeg");
+        assertThat(files.get("student-5/avatar-1.png")).isEqualTo(inline);
+        assertThat(files.get("student-6/avatar-2.jpeg")).isEqualTo(stored);
+    }
+
+    private Stream<AvatarExportEntry> entries() {
+        return Stream.of(
+                new AvatarExportEntry(1L, 5L, "a", "image/png", inline.length, MODIFIED, 10L, AvatarTier.DATABASE),
+                new AvatarExportEntry(2L, 6L, STORED_HASH, "image/jpeg", stored.length, MODIFIED, 11L,
+                        AvatarTier.STORAGE),
+                // missing from storage, left out of the archive
+                new AvatarExportEntry(3L, 7L, String.format("%064d", 3), "image/png", 10, MODIFIED, 12L,
+                        AvatarTier.STORAGE));
+    }
+
+    private static String field(byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.US_ASCII);
+    }
+
+    private static long checksum(byte[] header) {
+        byte[] copy = header.clone();
+        Arrays.fill(copy, 148, 156, (byte) ' ');
+        long sum = 0;
+        for (byte b : copy) {
+            sum += b & 0xFF;
+        }
+        return sum;
+    }
+
+    private static boolean isZeroBlock(byte[] tar, int position) {
+        return ByteBuffer.wrap(tar, position, 512).equals(ByteBuffer.allocate(512));
+    }
+}
@@ -0,0 +1,65 @@
+package ru.hogwarts.school.mockmvc;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.hogwarts.school.controller.CacheController;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(CacheController.class)
+public class CacheControllerTest {
+
+    @TestConfiguration
+    static class CacheManagerConfig {
+        @Bean
+        CacheManager cacheManager() {
+            CaffeineCacheManager cacheManager = new CaffeineCacheManager("students");
+            cacheManager.setCaffeine(Caffeine.newBuilder().recordStats());
+            cacheManager.registerCustomCache("names", Caffeine.newBuilder()
+                    .maximumWeight(1000)
+                    .weigher((Object key, Object value) -> value.toString().length())
+                    .executor(Runnable::run)
+                    .recordStats()
+                    .build());
+            return cacheManager;
+        }
+    }
+
+    @Autowired
+    CacheManager cacheManager;
+    @Autowired
+    MockMvc mockMvc;
+
+    @Test
+    void getCacheStatisticsTest() throws Exception {
+        Cache students = cacheManager.getCache("students");
+        students.put(1L, "Harry");
+        students.get(1L);
+        students.get(1L);
+        students.get(2L);
+
+        Cache names = cacheManager.getCache("names");
+        names.put(1L, "Hermione");
+        names.put(2L, "Ron");
+
+        mockMvc.perform(get("/cache/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[?(@.name == 'students')].hits").value(2))
+                .andExpect(jsonPath("$[?(@.name == 'students')].misses").value(1))
+                .andExpect(jsonPath("$[?(@.name == 'students')].size").value(1))
+                .andExpect(jsonPath("$[?(@.name == 'students')].weight").value(1))
+                .andExpect(jsonPath("$[?(@.name == 'names')].size").value(2))
+                .andExpect(jsonPath("$[?(@.name == 'names')].weight").value(11));
+    }
+}
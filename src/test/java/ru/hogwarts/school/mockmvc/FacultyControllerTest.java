@@ -8,17 +8,23 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.boot.test.mock.mockito.SpyBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import ru.hogwarts.school.controller.FacultyController;
+import ru.hogwarts.school.dto.FacultyDto;
 import ru.hogwarts.school.model.Faculty;
 import ru.hogwarts.school.model.Student;
+import ru.hogwarts.school.repository.EntityStreamer;
 import ru.hogwarts.school.repository.FacultyRepository;
 import ru.hogwarts.school.repository.StudentRepository;
 import ru.hogwarts.school.services.FacultyService;
+import ru.hogwarts.school.services.FacultySnapshot;
 
 
 import java.util.*;
+import java.util.function.Consumer;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.hasSize;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
@@ -36,6 +42,10 @@ public class FacultyControllerTest {
     FacultyRepository facultyRepository;
     @MockBean
     StudentRepository studentRepository;
+    @MockBean
+    EntityStreamer entityStreamer;
+    @MockBean
+    FacultySnapshot facultySnapshot;
     @Autowired
     MockMvc mockMvc;
 
@@ -114,9 +124,9 @@ public class FacultyControllerTest {
     }
     @Test
     void getAllFacultyTest() throws Exception {
-        List<Faculty> faculties = Arrays.asList(
-                new Faculty(1L, "Gryffindor", "Yellow"),
-                new Faculty(2L, "Slytherin", "Green")
+        List<FacultyDto> faculties = Arrays.asList(
+                new FacultyDto(1L, "Gryffindor", "Yellow"),
+                new FacultyDto(2L, "Slytherin", "Green")
         );
 
         when(facultyService.getAllFacul()).thenReturn(faculties);
@@ -134,9 +144,9 @@ public class FacultyControllerTest {
     }
     @Test
     void getColorFacultyTest() throws Exception {
-        List<Faculty> faculties = Arrays.asList(
-                new Faculty(1L, "Gryffindor", "Red"),
-                new Faculty(2L, "Slytherin", "Red")
+        List<FacultyDto> faculties = Arrays.asList(
+                new FacultyDto(1L, "Gryffindor", "Red"),
+                new FacultyDto(2L, "Slytherin", "Red")
         );
 
         when(facultyService.getFaculByColor("Red")).thenReturn(faculties);
@@ -155,8 +165,8 @@ public class FacultyControllerTest {
 
     @Test
     void getFacultyNameOrColorIgnoreCaseTest() throws Exception {
-        List<Faculty> faculties = Collections.singletonList(
-                new Faculty(1L, "Gryffindor", "Yellow")
+        List<FacultyDto> faculties = Collections.singletonList(
+                new FacultyDto(1L, "Gryffindor", "Yellow")
         );
 
         when(facultyService.getFacultyNameOrColor("ff")).thenReturn(faculties);
@@ -186,8 +196,54 @@ public class FacultyControllerTest {
 
     }
 
+    @Test
+    void streamAllFacultiesTest() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<Faculty> action = invocation.getArgument(1);
+            action.accept(new Faculty(1L, "Gryffindor", "Red"));
+            action.accept(new Faculty(2L, "Slytherin", "Green"));
+            return null;
+        }).when(entityStreamer).forEach(any(), any());
+
+        MvcResult result = mockMvc.perform(get("/faculty").accept("application/x-ndjson"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andReturn().getResponse().getContentAsString();
 
-}
+        String[] lines = body.split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(objectMapper.readValue(lines[1], Faculty.class).getName())
+                .isEqualTo("Slytherin");
+    }
 
+    @Test
+    void snapshotReadsTest() throws Exception {
+        when(facultySnapshot.current()).thenReturn(FacultySnapshot.Snapshot.of(List.of(
+                new FacultyDto(2L, "Slytherin", "Green"),
+                new FacultyDto(1L, "Gryffindor", "Red"),
+                new FacultyDto(3L, "Red", "Red")
+        )));
+
+        mockMvc.perform(get("/faculty"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(3)))
+                .andExpect(jsonPath("$[0].name").value("Gryffindor"));
 
+        mockMvc.perform(get("/faculty/2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Slytherin"));
+
+        mockMvc.perform(get("/faculty/color/rED"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)));
 
+        mockMvc.perform(get("/faculty/search?searchString=red"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)));
+
+        verifyNoInteractions(facultyRepository);
+    }
+}
@@ -0,0 +1,195 @@
+package ru.hogwarts.school.mockmvc;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.hogwarts.school.storage.PackAvatarStorage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PackAvatarStorageTest {
+    private static final long SEGMENT_SIZE = 4096;
+    private static final int MAP_CHUNK_SIZE = 512;
+
+    @TempDir
+    Path root;
+
+    PackAvatarStorage storage;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        storage = reopen();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        storage.close();
+    }
+
+    @Test
+    void appendAndReadBackAcrossRemapsTest() throws IOException {
+        byte[][] contents = new byte[40][];
+        for (int i = 0; i < contents.length; i++) {
+            contents[i] = bytes(i, 100 + i * 7);
+            storage.store(hash(i), source(contents[i]));
+            // every earlier record stays readable while the tail chunk is remapped and chunks fill up
+            for (int j = 0; j <= i; j++) {
+                assertThat(read(hash(j))).isEqualTo(contents[j]);
+            }
+        }
+
+        assertThat(storage.contains(hash(0))).isTrue();
+        assertThat(storage.size(hash(5))).isEqualTo(contents[5].length);
+        assertThat(storage.location(hash(5))).isEqualTo("pack:" + hash(5));
+        assertThat(storage.file(hash(5))).isNull();
+        assertThat(segments()).isGreaterThan(1);
+
+        ByteArrayOutputStream range = new ByteArrayOutputStream();
+        storage.transferTo(hash(3), 10, 20, Channels.newChannel(range));
+        assertThat(range.toByteArray()).isEqualTo(Arrays.copyOfRange(contents[3], 10, 30));
+    }
+
+    @Test
+    void recordLargerThanChunkTest() throws IOException {
+        byte[] large = bytes(1, MAP_CHUNK_SIZE * 3);
+        storage.store(hash(1), source(large));
+
+        assertThat(read(hash(1))).isEqualTo(large);
+    }
+
+    @Test
+    void deleteTest() throws IOException {
+        storage.store(hash(1), source(bytes(1, 100)));
+        storage.store(hash(2), source(bytes(2, 100)));
+
+        storage.delete(hash(1));
+        storage.delete(hash(1));
+
+        assertThat(storage.contains(hash(1))).isFalse();
+        assertThatThrownBy(() -> storage.open(hash(1))).isInstanceOf(NoSuchFileException.class);
+        assertThat(read(hash(2))).isEqualTo(bytes(2, 100));
+    }
+
+    @Test
+    void compactionTest() throws IOException {
+        for (int i = 0; i < 30; i++) {
+            storage.store(hash(i), source(bytes(i, 300)));
+        }
+        int before = segments();
+        for (int i = 0; i < 30; i++) {
+            if (i % 5 != 0) {
+                storage.delete(hash(i));
+            }
+        }
+
+        storage.compact();
+
+        assertThat(segments()).isLessThan(before);
+        for (int i = 0; i < 30; i++) {
+            assertThat(storage.contains(hash(i))).isEqualTo(i % 5 == 0);
+            if (i % 5 == 0) {
+                assertThat(read(hash(i))).isEqualTo(bytes(i, 300));
+            }
+        }
+    }
+
+    @Test
+    void reopenTest() throws IOException {
+        for (int i = 0; i < 20; i++) {
+            storage.store(hash(i), source(bytes(i, 250)));
+        }
+        for (int i = 0; i < 20; i += 2) {
+            storage.delete(hash(i));
+        }
+        storage.compact();
+        storage.store(hash(0), source(bytes(100, 50)));
+
+        storage.close();
+        storage = reopen();
+
+        assertThat(read(hash(0))).isEqualTo(bytes(100, 50));
+        for (int i = 1; i < 20; i++) {
+            assertThat(storage.contains(hash(i))).isEqualTo(i % 2 == 1);
+            if (i % 2 == 1) {
+                assertThat(read(hash(i))).isEqualTo(bytes(i, 250));
+            }
+        }
+    }
+
+    @Test
+    void tombstonesOfCompactedSegmentsAreDroppedTest() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            storage.store(hash(i), source(bytes(i, 300)));
+        }
+        for (int i = 100; i < 108; i++) {
+            storage.store(hash(i), source(bytes(i, 300)));
+        }
+        for (int i = 100; i < 108; i++) {
+            storage.delete(hash(i));
+        }
+        byte[] tail = bytes(200, 1000);
+        storage.store(hash(200), source(tail));
+        assertThat(segments()).isEqualTo(3);
+
+        storage.compact();
+
+        // the second segment held both the puts and their tombstones, so nothing of it is carried over
+        assertThat(segments()).isEqualTo(2);
+        assertThat(Files.size(root.resolve("pack").resolve("segment-000003.pack"))).isEqualTo(77L + tail.length);
+
+        storage.close();
+        storage = reopen();
+        for (int i = 0; i < 10; i++) {
+            assertThat(read(hash(i))).isEqualTo(bytes(i, 300));
+        }
+        for (int i = 100; i < 108; i++) {
+            assertThat(storage.contains(hash(i))).isFalse();
+        }
+        assertThat(read(hash(200))).isEqualTo(tail);
+    }
+
+    private PackAvatarStorage reopen() throws IOException {
+        PackAvatarStorage opened = new PackAvatarStorage(root, SEGMENT_SIZE, 0.5, MAP_CHUNK_SIZE);
+        opened.open();
+        return opened;
+    }
+
+    private int segments() throws IOException {
+        try (Stream<Path> files = Files.list(root.resolve("pack"))) {
+            return (int) files.count();
+        }
+    }
+
+    private byte[] read(String hash) throws IOException {
+        try (InputStream in = storage.open(hash)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private Path source(byte[] content) throws IOException {
+        return Files.write(Files.createTempFile(root, "avatar", ".upload"), content);
+    }
+
+    private static String hash(int i) {
+        return String.format("%064d", i);
+    }
+
+    private static byte[] bytes(long seed, int size) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,170 @@
+package ru.hogwarts.school.mockmvc;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import ru.hogwarts.school.dto.FacultyDto;
+import ru.hogwarts.school.dto.StudentDto;
+import ru.hogwarts.school.model.Faculty;
+import ru.hogwarts.school.model.Student;
+import ru.hogwarts.school.repository.FacultyRepository;
+import ru.hogwarts.school.repository.StudentRepository;
+import ru.hogwarts.school.services.FacultySnapshot;
+import ru.hogwarts.school.services.RecentStudents;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+public class RecentStudentsTest {
+    StudentRepository studentRepository = mock(StudentRepository.class);
+    FacultyRepository facultyRepository = mock(FacultyRepository.class);
+
+    @Test
+    void wrapAroundKeepsNewestTest() {
+        RecentStudents recent = seeded(3, true);
+        for (long id = 1; id <= 5; id++) {
+            recent.added(student(id, null));
+        }
+
+        assertThat(ids(recent.latest(3))).containsExactly(5L, 4L, 3L);
+        assertThat(ids(recent.latest(1))).containsExactly(5L);
+        assertThat(recent.latest(4)).isNull();
+    }
+
+    @Test
+    void removeLeavesGapUntilOverwrittenTest() {
+        RecentStudents recent = seeded(3, true);
+        for (long id = 1; id <= 3; id++) {
+            recent.added(student(id, null));
+        }
+
+        recent.removed(2L);
+
+        assertThat(ids(recent.latest(3))).containsExactly(3L, 1L);
+
+        recent.added(student(4L, null));
+
+        assertThat(ids(recent.latest(2))).containsExactly(4L, 3L);
+        assertThat(recent.latest(3)).isNull();
+    }
+
+    @Test
+    void concurrentWritersTest() throws Exception {
+        int capacity = 64;
+        int writers = 8;
+        int perWriter = 2000;
+        RecentStudents recent = seeded(capacity, true);
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int writer = 0; writer < writers; writer++) {
+                long first = (long) writer * perWriter;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (long id = first; id < first + perWriter; id++) {
+                        recent.added(student(id, null));
+                        recent.updated(new StudentDto(id, "Updated " + id, 20, null));
+                        if (id % 2 == 0) {
+                            recent.removed(id);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // each writer's run in the last laps alternates removed and kept ids, so at least a quarter survives
+        List<StudentDto> latest = recent.latest(capacity / 4);
+        assertThat(latest).hasSize(capacity / 4);
+        assertThat(new HashSet<>(ids(latest))).hasSize(capacity / 4);
+        for (StudentDto student : latest) {
+            assertThat(student.getId() % 2).isEqualTo(1L);
+            assertThat(student.getName()).isEqualTo("Updated " + student.getId());
+        }
+    }
+
+    @Test
+    void seedDoesNotOverwriteLiveAppendsTest() {
+        RecentStudents recent = new RecentStudents(studentRepository, snapshot(true), 3);
+        when(studentRepository.findLatestDtos(PageRequest.of(0, 3))).thenAnswer(invocation -> {
+            recent.added(student(10L, null));
+            return List.of(student(9L, null), student(8L, null), student(7L, null));
+        });
+
+        recent.seed();
+
+        assertThat(ids(recent.latest(3))).containsExactly(10L, 9L, 8L);
+
+        recent.added(student(11L, null));
+
+        assertThat(ids(recent.latest(3))).containsExactly(11L, 10L, 9L);
+    }
+
+    @Test
+    void facultyKnownOnlyByIdIsResolvedFromSnapshotTest() {
+        when(facultyRepository.findAllDtos()).thenReturn(List.of(new FacultyDto(1L, "Gryffindor", "red")));
+        RecentStudents recent = seeded(3, true);
+        Student student = new Student(1L, "Harry", 11);
+        Faculty faculty = new Faculty();
+        faculty.setId(1L);
+        student.setFaculty(faculty);
+
+        recent.added(RecentStudents.describe(student));
+
+        FacultyDto published = recent.latest(1).get(0).getFaculty();
+        assertThat(published.getName()).isEqualTo("Gryffindor");
+        assertThat(published.getColor()).isEqualTo("red");
+    }
+
+    @Test
+    void facultyMissingFromSnapshotIsFilledAtReadTimeTest() {
+        FacultySnapshot facultySnapshot = snapshot(true);
+        when(studentRepository.findLatestDtos(PageRequest.of(0, 3))).thenReturn(Collections.emptyList());
+        RecentStudents recent = new RecentStudents(studentRepository, facultySnapshot, 3);
+        recent.seed();
+
+        recent.added(student(1L, new FacultyDto(2L, null, null)));
+
+        assertThat(recent.latest(1).get(0).getFaculty().getName()).isNull();
+
+        facultySnapshot.put(new FacultyDto(2L, "Slytherin", "green"));
+
+        assertThat(recent.latest(1).get(0).getFaculty().getName()).isEqualTo("Slytherin");
+        verify(facultyRepository).findAllDtos();
+        verifyNoMoreInteractions(facultyRepository);
+    }
+
+    private RecentStudents seeded(int capacity, boolean snapshot) {
+        when(studentRepository.findLatestDtos(PageRequest.of(0, capacity))).thenReturn(Collections.emptyList());
+        RecentStudents recent = new RecentStudents(studentRepository, snapshot(snapshot), capacity);
+        recent.seed();
+        return recent;
+    }
+
+    private FacultySnapshot snapshot(boolean enabled) {
+        FacultySnapshot facultySnapshot = new FacultySnapshot(facultyRepository, enabled);
+        facultySnapshot.seed();
+        return facultySnapshot;
+    }
+
+    private static StudentDto student(long id, FacultyDto faculty) {
+        return new StudentDto(id, "Student " + id, 20, faculty);
+    }
+
+    private static List<Long> ids(List<StudentDto> students) {
+        return students.stream().map(StudentDto::getId).collect(Collectors.toList());
+    }
+}
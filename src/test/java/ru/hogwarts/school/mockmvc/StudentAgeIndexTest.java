@@ -0,0 +1,96 @@
+package ru.hogwarts.school.mockmvc;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.hogwarts.school.repository.StudentRepository;
+import ru.hogwarts.school.services.StudentAgeIndex;
+
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class StudentAgeIndexTest {
+    StudentRepository studentRepository = mock(StudentRepository.class);
+    StudentAgeIndex index = new StudentAgeIndex(studentRepository, mock(PlatformTransactionManager.class));
+
+    @Test
+    void notReadyBeforeSeedTest() {
+        index.added(1L, 11);
+
+        assertThat(index.idsBetween(0, 100)).isNull();
+    }
+
+    @Test
+    void rangeQueriesTest() {
+        when(studentRepository.streamIdAndAge()).thenReturn(Stream.of(
+                new Object[]{3L, 12}, new Object[]{1L, 11}, new Object[]{2L, 12}, new Object[]{4L, 17}));
+        index.seed();
+
+        assertThat(index.idsBetween(11, 12)).containsExactly(1L, 2L, 3L);
+        assertThat(index.idsBetween(12, 12)).containsExactly(2L, 3L);
+        assertThat(index.idsBetween(13, 16)).isEmpty();
+        assertThat(index.idsBetween(0, Integer.MAX_VALUE)).containsExactly(1L, 2L, 3L, 4L);
+        assertThat(index.idsBetween(17, 11)).isEmpty();
+
+        index.added(5L, 11);
+        index.added(5L, 11);
+        index.changed(3L, 12, 17);
+        index.removed(4L, 17);
+        index.removed(42L, 17);
+
+        assertThat(index.idsBetween(11, 11)).containsExactly(1L, 5L);
+        assertThat(index.idsBetween(12, 17)).containsExactly(2L, 3L);
+    }
+
+    @Test
+    void changesDuringSeedAreReplayedTest() {
+        when(studentRepository.streamIdAndAge()).thenAnswer(invocation -> {
+            // committed while the table is scanned: the scan sees the removal of 2 but not the student added last
+            index.added(1L, 11);
+            index.removed(2L, 12);
+            index.added(3L, 13);
+            index.changed(1L, 11, 14);
+            return Stream.of(new Object[]{1L, 11});
+        });
+
+        index.seed();
+
+        assertThat(index.idsBetween(0, 100)).containsExactly(1L, 3L);
+        assertThat(index.idsBetween(14, 14)).containsExactly(1L);
+        assertThat(index.idsBetween(13, 13)).containsExactly(3L);
+    }
+
+    @Test
+    void changesDuringRebuildAreReplayedTest() {
+        when(studentRepository.streamIdAndAge()).thenReturn(Stream.of(new Object[]{1L, 11}, new Object[]{2L, 12}));
+        index.seed();
+        when(studentRepository.streamIdAndAge()).thenAnswer(invocation -> {
+            index.removed(1L, 11);
+            index.added(9L, 15);
+            return Stream.of(new Object[]{1L, 11}, new Object[]{2L, 12});
+        });
+
+        index.rebuild();
+
+        assertThat(index.idsBetween(0, 100)).containsExactly(2L, 9L);
+    }
+
+    @Test
+    void failedRebuildKeepsIndexTest() {
+        when(studentRepository.streamIdAndAge()).thenReturn(Stream.of(new Object[]{1L, 11}));
+        index.seed();
+        when(studentRepository.streamIdAndAge()).thenThrow(new IllegalStateException("connection lost"));
+
+        assertThatThrownBy(() -> index.rebuild()).isInstanceOf(IllegalStateException.class);
+        index.added(2L, 12);
+
+        assertThat(index.idsBetween(0, 100)).containsExactly(1L, 2L);
+        doReturn(Stream.of(new Object[]{1L, 11}, new Object[]{2L, 12})).when(studentRepository).streamIdAndAge();
+        index.rebuild();
+        assertThat(index.idsBetween(0, 100)).containsExactly(1L, 2L);
+    }
+}
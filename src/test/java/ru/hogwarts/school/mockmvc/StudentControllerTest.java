@@ -6,24 +6,39 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.boot.test.mock.mockito.SpyBean;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import ru.hogwarts.school.controller.StudentController;
+import ru.hogwarts.school.dto.AvatarUploadResult;
+import ru.hogwarts.school.dto.CursorPage;
 import ru.hogwarts.school.model.Faculty;
 import ru.hogwarts.school.model.Student;
+import ru.hogwarts.school.repository.EntityStreamer;
 import ru.hogwarts.school.repository.FacultyRepository;
 import ru.hogwarts.school.repository.StudentRepository;
+import ru.hogwarts.school.dto.StudentAgeStatistics;
+import ru.hogwarts.school.dto.StudentDto;
+import ru.hogwarts.school.dto.StudentImportReport;
 import ru.hogwarts.school.services.AvatarService;
+import ru.hogwarts.school.services.RecentStudents;
+import ru.hogwarts.school.services.StudentAgeIndex;
+import ru.hogwarts.school.services.StudentImportService;
+import ru.hogwarts.school.services.StudentNameIndex;
 import ru.hogwarts.school.services.StudentService;
+import ru.hogwarts.school.services.StudentStatistics;
 
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 import java.util.stream.Collectors;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.hasSize;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
@@ -42,6 +57,18 @@ public class StudentControllerTest {
     FacultyRepository facultyRepository;
     @MockBean
     AvatarService avatarService;
+    @MockBean
+    EntityStreamer entityStreamer;
+    @MockBean
+    StudentStatistics studentStatistics;
+    @MockBean
+    StudentAgeIndex studentAgeIndex;
+    @MockBean
+    StudentNameIndex studentNameIndex;
+    @MockBean
+    StudentImportService studentImportService;
+    @MockBean
+    RecentStudents recentStudents;
     @Autowired
     MockMvc mockMvc;
     @Autowired
@@ -121,9 +148,9 @@ public class StudentControllerTest {
 
     @Test
     void getAllStudentsTest() throws Exception {
-        List<Student> students = Arrays.asList(
-                new Student(1L, "Alice", 22),
-                new Student(2L, "Bob", 24)
+        List<StudentDto> students = Arrays.asList(
+                new StudentDto(1L, "Alice", 22, null),
+                new StudentDto(2L, "Bob", 24, null)
         );
 
         when(studentService.getAllStud()).thenReturn(students);
@@ -144,9 +171,9 @@ public class StudentControllerTest {
     @Test
     void getAllStudentsByAgeTest() throws Exception {
         int targetAge = 25;
-        List<Student> students = Arrays.asList(
-                new Student(1L, "Alice", 22),
-                new Student(2L, "Bob", 25)
+        List<StudentDto> students = Arrays.asList(
+                new StudentDto(1L, "Alice", 22, null),
+                new StudentDto(2L, "Bob", 25, null)
         );
 
         when(studentService.getStudByAge(targetAge)).thenReturn(students);
@@ -163,9 +190,9 @@ public class StudentControllerTest {
 
     @Test
     void getStudentsByAgeBetweenTest() throws Exception {
-        when(studentRepository.findStudByAgeBetween(10, 20)).thenReturn(Arrays.asList(
-                new Student(1L, "Roman", 15),
-                new Student(2L, "Anna", 19)
+        when(studentRepository.findDtosByAgeBetween(10, 20)).thenReturn(Arrays.asList(
+                new StudentDto(1L, "Roman", 15, null),
+                new StudentDto(2L, "Anna", 19, null)
         ));
         mockMvc.perform(get("/student/age-between?minAge=10&maxAge=20")
                         .contentType(MediaType.APPLICATION_JSON)
@@ -181,14 +208,13 @@ public class StudentControllerTest {
 
     @Test
     void byFaculty() throws Exception {
-        List<Student> students = Arrays.asList(
-                new Student(1L, "Harry", 22),
-                new Student(2L, "Ron", 23)
+        List<StudentDto> students = Arrays.asList(
+                new StudentDto(1L, "Harry", 22, null),
+                new StudentDto(2L, "Ron", 23, null)
         );
         Faculty faculty = new Faculty(1L, "Gryffindor", "Yellow");
-        faculty.setStudents(students);
 
-        when(facultyRepository.findById(1L)).thenReturn(Optional.of(faculty));
+        when(studentRepository.findDtosByFacultyId(1L)).thenReturn(students);
 
         mockMvc.perform(get("/student/by-faculty?id=" + faculty.getId())
                         .contentType(MediaType.APPLICATION_JSON)
@@ -242,22 +268,19 @@ public class StudentControllerTest {
     }
     @Test
     void findLastFiveStudentsTest() throws Exception {
-        List<Student> students = Arrays.asList(
-                new Student(1L, "Alice", 22),
-                new Student(2L, "Bob", 24),
-                new Student(3L, "Charlie", 20),
-                new Student(4L, "David", 21),
-                new Student(5L, "Eve", 23),
-                new Student(6L, "Frank", 25),
-                new Student(7L, "Grace", 19),
-                new Student(8L, "Helen", 27),
-                new Student(9L, "Ivan", 26),
-                new Student(10L, "John", 18)
+        List<StudentDto> students = Arrays.asList(
+                new StudentDto(1L, "Alice", 22, null),
+                new StudentDto(2L, "Bob", 24, null),
+                new StudentDto(3L, "Charlie", 20, null),
+                new StudentDto(4L, "David", 21, null),
+                new StudentDto(5L, "Eve", 23, null),
+                new StudentDto(6L, "Frank", 25, null),
+                new StudentDto(7L, "Grace", 19, null),
+                new StudentDto(8L, "Helen", 27, null),
+                new StudentDto(9L, "Ivan", 26, null),
+                new StudentDto(10L, "John", 18, null)
         );
-        Pageable pageable = PageRequest.of(0, 5);
-        Page<Student> studentPage = new PageImpl<>(students.subList(5, 10), pageable, students.size());
-
-        when(studentRepository.findLastFiveStudents(any())).thenReturn(studentPage);
+        when(studentRepository.findLatestDtos(PageRequest.of(0, 5))).thenReturn(students.subList(5, 10));
 
         mockMvc.perform(MockMvcRequestBuilders.get("/student/last-five")
                         .contentType(MediaType.APPLICATION_JSON)
@@ -272,7 +295,245 @@ public class StudentControllerTest {
                 .andExpect(jsonPath("$[4].id").value(10));
     }
 
-}
+    @Test
+    void findRecentStudentsFromBufferTest() throws Exception {
+        when(recentStudents.latest(3)).thenReturn(Arrays.asList(
+                new StudentDto(10L, "John", 18, null),
+                new StudentDto(9L, "Ivan", 26, null),
+                new StudentDto(8L, "Helen", 27, null)
+        ));
+
+        mockMvc.perform(get("/student/recent?n=3"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(3)))
+                .andExpect(jsonPath("$[0].id").value(10))
+                .andExpect(jsonPath("$[2].name").value("Helen"));
+
+        mockMvc.perform(get("/student/recent?n=0"))
+                .andExpect(status().isBadRequest());
+
+        verify(studentRepository, never()).findLatestDtos(any());
+    }
+
+    @Test
+    void saveAvatarBatchTest() throws Exception {
+        when(avatarService.saveBatch(any())).thenReturn(Arrays.asList(
+                AvatarUploadResult.ok("1", 1L, 10L),
+                AvatarUploadResult.failed("2", 2L, "Student not found")
+        ));
+
+        mockMvc.perform(multipart("/student/avatars")
+                        .file(new MockMultipartFile("1", "harry.png", "image/png", new byte[]{1, 2, 3}))
+                        .file(new MockMultipartFile("2", "ron.png", "image/png", new byte[]{4, 5, 6})))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].success").value(true))
+                .andExpect(jsonPath("$[0].avatarId").value(10))
+                .andExpect(jsonPath("$[1].success").value(false))
+                .andExpect(jsonPath("$[1].error").value("Student not found"));
+    }
+
+    @Test
+    void getStudentsPageTest() throws Exception {
+        List<StudentDto> students = List.of(new StudentDto(3L, "Harry", 17, null), new StudentDto(4L, "Ron", 17, null));
+        when(studentRepository.findDtosAfter(eq(2L), any()))
+                .thenReturn(new SliceImpl<>(students, PageRequest.of(0, 2), true));
+
+        mockMvc.perform(get("/student/page")
+                        .param("cursor", CursorPage.encode(2L))
+                        .param("size", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items", hasSize(2)))
+                .andExpect(jsonPath("$.items[1].id").value(4))
+                .andExpect(jsonPath("$.next").value(CursorPage.encode(4L)));
+
+        mockMvc.perform(get("/student/page").param("cursor", "not a cursor"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/student/page").param("size", "0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void streamAllStudentsTest() throws Exception {
+        when(studentRepository.streamAll()).thenAnswer(invocation -> Stream.of(
+                new Student(1L, "Alice", 22),
+                new Student(2L, "Bob", 24)
+        ));
+        doAnswer(invocation -> {
+            Supplier<Stream<Student>> source = invocation.getArgument(0);
+            Consumer<Student> action = invocation.getArgument(1);
+            source.get().forEach(action);
+            return null;
+        }).when(entityStreamer).forEach(any(), any());
+
+        MvcResult result = mockMvc.perform(get("/student").accept("application/x-ndjson"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andReturn().getResponse().getContentAsString();
+        String[] lines = body.split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(objectMapper.readValue(lines[0], Student.class).getName()).isEqualTo("Alice");
+        assertThat(objectMapper.readValue(lines[1], Student.class).getId()).isEqualTo(2L);
+
+        result = mockMvc.perform(get("/student?stream=true"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"));
+    }
+
+    @Test
+    void getAgeStatisticsTest() throws Exception {
+        Map<Integer, Long> histogram = new TreeMap<>();
+        histogram.put(17, 2L);
+        histogram.put(18, 1L);
+        when(studentStatistics.snapshot()).thenReturn(new StudentAgeStatistics(3, 52 / 3.0, 17, 18, histogram));
+        when(studentStatistics.getCount()).thenReturn(3L);
+
+        mockMvc.perform(get("/student/age-statistics"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count").value(3))
+                .andExpect(jsonPath("$.minAge").value(17))
+                .andExpect(jsonPath("$.maxAge").value(18))
+                .andExpect(jsonPath("$.histogram.17").value(2));
+
+        mockMvc.perform(get("/student/count"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$").value(3));
+        verify(studentRepository, never()).getCountOfStudents();
+    }
+
+    @Test
+    void getStudentsByAgeBetweenFromIndexTest() throws Exception {
+        when(studentAgeIndex.idsBetween(30, 40)).thenReturn(new long[]{7L, 3L});
+        when(studentRepository.findDtosByIdIn(List.of(7L, 3L))).thenReturn(Arrays.asList(
+                new StudentDto(3L, "Minerva", 40, null),
+                new StudentDto(7L, "Remus", 33, null)
+        ));
+
+        mockMvc.perform(get("/student/age-between?minAge=30&maxAge=40"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].name").value("Remus"))
+                .andExpect(jsonPath("$[1].name").value("Minerva"));
+
+        verify(studentRepository, never()).findDtosByAgeBetween(anyInt(), anyInt());
+    }
 
+    @Test
+    void importStudentsTest() throws Exception {
+        when(studentImportService.importStudents(any(), eq(StudentImportService.Format.CSV), eq(500)))
+                .thenReturn(new StudentImportReport(3, 2, 1, 1, 12,
+                        List.of(new StudentImportReport.RowError(3, "Age must be a number: ten"))));
+
+        mockMvc.perform(post("/student/import?batchSize=500")
+                        .contentType("text/csv")
+                        .content("name,age,faculty\nHarry,11,Gryffindor\nDraco,ten,Slytherin\nLuna,11,2\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(2))
+                .andExpect(jsonPath("$.failed").value(1))
+                .andExpect(jsonPath("$.chunks").value(1))
+                .andExpect(jsonPath("$.errors[0].row").value(3))
+                .andExpect(jsonPath("$.errors[0].message").value("Age must be a number: ten"));
+
+        mockMvc.perform(post("/student/import?batchSize=0")
+                        .contentType("text/csv")
+                        .content("name,age\n"))
+                .andExpect(status().isBadRequest());
+    }
 
+    @Test
+    void bulkDeleteStudentsTest() throws Exception {
+        List<Object[]> rows = List.of(new Object[]{1L, 17}, new Object[]{2L, 18});
+        when(studentRepository.findIdAndAgeByIdIn(List.of(1L, 2L, 3L))).thenReturn(rows);
+        when(studentRepository.deleteByIdIn(List.of(1L, 2L, 3L))).thenReturn(2);
+
+        mockMvc.perform(post("/student/bulk/delete")
+                        .content("[1,2,3,2]")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string("2"));
+
+        verify(studentStatistics).removed(17);
+        verify(studentStatistics).removed(18);
+        verify(studentAgeIndex).removed(1L, 17);
+        verify(studentAgeIndex).removed(2L, 18);
+
+        mockMvc.perform(post("/student/bulk/delete")
+                        .content("[]")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
 
+    @Test
+    void bulkDeleteStudentsOlderThanTest() throws Exception {
+        List<Object[]> rows = Collections.singletonList(new Object[]{7L, 19});
+        when(studentRepository.findIdAndAgeByAgeGreaterThan(18)).thenReturn(rows);
+        when(studentRepository.deleteByIdIn(List.of(7L))).thenReturn(1);
+
+        mockMvc.perform(delete("/student/bulk/older-than?age=18"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("1"));
+
+        verify(studentAgeIndex).removed(7L, 19);
+    }
+
+    @Test
+    void bulkAssignFacultyTest() throws Exception {
+        Faculty faculty = new Faculty(4L, "Hufflepuff", "yellow");
+        when(facultyRepository.findById(4L)).thenReturn(Optional.of(faculty));
+        when(studentRepository.assignFaculty(faculty, List.of(1L, 2L))).thenReturn(2);
+
+        mockMvc.perform(put("/student/bulk/faculty?facultyId=4")
+                        .content("[1,2]")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string("2"));
+
+        when(facultyRepository.findById(5L)).thenReturn(Optional.empty());
+        mockMvc.perform(put("/student/bulk/faculty?facultyId=5")
+                        .content("[1,2]")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNotFound());
+
+        verify(studentRepository, times(1)).assignFaculty(any(), any());
+    }
+
+    @Test
+    void searchStudentsTest() throws Exception {
+        when(studentNameIndex.search("herm gra", 5)).thenReturn(new long[]{9L, 4L});
+        when(studentRepository.findDtosByIdIn(List.of(9L, 4L))).thenReturn(Arrays.asList(
+                new StudentDto(4L, "Hermes Grant", 40, null),
+                new StudentDto(9L, "Hermione Granger", 17, null)
+        ));
+
+        mockMvc.perform(get("/student/search?query=herm gra&limit=5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].name").value("Hermione Granger"))
+                .andExpect(jsonPath("$[1].name").value("Hermes Grant"));
+
+        when(studentNameIndex.search("herm granger", 5)).thenReturn(null);
+        when(studentRepository.findDtosByNameLike("%granger%", PageRequest.of(0, 500))).thenReturn(Arrays.asList(
+                new StudentDto(3L, "Bob Granger", 30, null),
+                new StudentDto(9L, "Hermione Granger", 17, null),
+                new StudentDto(5L, "Hermione Ogranger", 17, null),
+                new StudentDto(6L, "Hermes Grangerford", 50, null)
+        ));
+
+        mockMvc.perform(get("/student/search?query=herm granger&limit=5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].name").value("Hermione Granger"))
+                .andExpect(jsonPath("$[1].name").value("Hermes Grangerford"));
+
+        mockMvc.perform(get("/student/search?query= "))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/student/search?query=herm&limit=500"))
+                .andExpect(status().isBadRequest());
+    }
+}
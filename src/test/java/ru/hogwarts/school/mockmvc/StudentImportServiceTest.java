@@ -0,0 +1,162 @@
+package ru.hogwarts.school.mockmvc;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.hibernate.Session;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.hogwarts.school.dto.StudentImportReport;
+import ru.hogwarts.school.model.Faculty;
+import ru.hogwarts.school.model.Student;
+import ru.hogwarts.school.repository.FacultyRepository;
+import ru.hogwarts.school.services.StudentImportService;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class StudentImportServiceTest {
+    FacultyRepository facultyRepository = mock(FacultyRepository.class);
+    EntityManager entityManager = mock(EntityManager.class);
+    Session session = mock(Session.class);
+    StudentImportService importService;
+    Faculty gryffindor = new Faculty(1L, "Gryffindor", "red");
+    List<Student> pending = new ArrayList<>();
+    List<Student> persisted = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        importService = new StudentImportService(facultyRepository, new ObjectMapper(),
+                mock(PlatformTransactionManager.class), 1000, 1000);
+        ReflectionTestUtils.setField(importService, "entityManager", entityManager);
+        when(entityManager.unwrap(Session.class)).thenReturn(session);
+        when(session.getJdbcBatchSize()).thenReturn(50);
+        doAnswer(invocation -> {
+            Student student = invocation.getArgument(0);
+            if (student.getName().equals("Peeves")) {
+                pending.clear();
+                throw new PersistenceException("constraint violated");
+            }
+            pending.add(student);
+            return null;
+        }).when(entityManager).persist(any(Student.class));
+        doAnswer(invocation -> {
+            persisted.addAll(pending);
+            pending.clear();
+            return null;
+        }).when(entityManager).flush();
+        when(facultyRepository.findFirstByNameKey("gryffindor")).thenReturn(Optional.of(gryffindor));
+        when(facultyRepository.findById(1L)).thenReturn(Optional.of(gryffindor));
+        when(facultyRepository.findById(9L)).thenReturn(Optional.empty());
+    }
+
+    @Test
+    void quotedFieldsTest() throws Exception {
+        StudentImportReport report = importCsv(null,
+                "Name,Age,Faculty",
+                "\"Potter, Harry\",11,Gryffindor",
+                "\"Say \"\"hi\"\"\", 12 ,",
+                "\"Weasley\",\"13\",\"1\"");
+
+        assertThat(report.getRows()).isEqualTo(3);
+        assertThat(report.getImported()).isEqualTo(3);
+        assertThat(names()).containsExactly("Potter, Harry", "Say \"hi\"", "Weasley");
+        assertThat(persisted.get(0).getFaculty()).isSameAs(gryffindor);
+        assertThat(persisted.get(1).getFaculty()).isNull();
+        assertThat(persisted.get(1).getAge()).isEqualTo(12);
+        assertThat(persisted.get(2).getFaculty()).isSameAs(gryffindor);
+    }
+
+    @Test
+    void badRowsTest() throws Exception {
+        StudentImportReport report = importCsv(null,
+                "name,age,faculty_id",
+                "Harry,11,1",
+                ",12,",
+                "Ron,eleven,",
+                "Neville,-1,",
+                "Luna,11,9",
+                "\"Ginny,10,",
+                "",
+                "Hermione,12,");
+
+        assertThat(report.getRows()).isEqualTo(7);
+        assertThat(report.getImported()).isEqualTo(2);
+        assertThat(report.getFailed()).isEqualTo(5);
+        assertThat(names()).containsExactly("Harry", "Hermione");
+        assertThat(report.getErrors().stream().map(StudentImportReport.RowError::getRow).collect(Collectors.toList()))
+                .containsExactly(3L, 4L, 5L, 6L, 7L);
+        assertThat(report.getErrors().get(0).getMessage()).isEqualTo("Name is required");
+        assertThat(report.getErrors().get(1).getMessage()).isEqualTo("Age must be a number: eleven");
+        assertThat(report.getErrors().get(3).getMessage()).isEqualTo("Faculty not found: 9");
+        assertThat(report.getErrors().get(4).getMessage()).isEqualTo("Unterminated quoted value");
+    }
+
+    @Test
+    void batchBoundariesTest() throws Exception {
+        StudentImportReport report = importCsv(2,
+                "name,age",
+                "A,11",
+                "B,12",
+                "C,13",
+                "Peeves,300",
+                "E,15");
+
+        assertThat(report.getImported()).isEqualTo(4);
+        assertThat(report.getFailed()).isEqualTo(1);
+        assertThat(report.getChunks()).isEqualTo(3);
+        assertThat(report.getErrors().get(0).getRow()).isEqualTo(5L);
+        assertThat(report.getErrors().get(0).getMessage()).isEqualTo("constraint violated");
+        assertThat(names()).containsExactly("A", "B", "C", "E");
+        // [A,B] and [E] flush as chunks, the failed [C,Peeves] chunk is retried row by row and only C gets flushed
+        verify(entityManager, times(3)).flush();
+    }
+
+    @Test
+    void sessionIsRestoredAfterEachChunkTest() throws Exception {
+        importCsv(2,
+                "name,age",
+                "A,11",
+                "B,12",
+                "C,13");
+
+        verify(session).setJdbcBatchSize(2);
+        verify(session).setJdbcBatchSize(1);
+        verify(session, times(2)).setJdbcBatchSize(50);
+        persisted.forEach(student -> verify(entityManager).detach(student));
+        verify(entityManager, never()).clear();
+    }
+
+    @Test
+    void missingHeaderColumnTest() {
+        assertThatThrownBy(() -> importCsv(null, "name,faculty", "Harry,Gryffindor"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("CSV header must contain name and age columns");
+        assertThat(persisted).isEmpty();
+    }
+
+    private StudentImportReport importCsv(Integer batchSize, String... lines) throws Exception {
+        byte[] csv = String.join("\n", lines).getBytes(StandardCharsets.UTF_8);
+        return importService.importStudents(new ByteArrayInputStream(csv), StudentImportService.Format.CSV, batchSize);
+    }
+
+    private List<String> names() {
+        return persisted.stream().map(Student::getName).collect(Collectors.toList());
+    }
+}
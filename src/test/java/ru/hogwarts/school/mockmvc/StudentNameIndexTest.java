@@ -0,0 +1,124 @@
+package ru.hogwarts.school.mockmvc;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.hogwarts.school.repository.StudentRepository;
+import ru.hogwarts.school.services.StudentNameIndex;
+
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class StudentNameIndexTest {
+    StudentRepository studentRepository = mock(StudentRepository.class);
+    StudentNameIndex index = new StudentNameIndex(studentRepository, mock(PlatformTransactionManager.class));
+
+    @Test
+    void notReadyBeforeSeedTest() {
+        index.put(1L, "Harry Potter");
+
+        assertThat(index.search("harry", 10)).isNull();
+    }
+
+    @Test
+    void changesDuringSeedAreReplayedTest() {
+        when(studentRepository.streamIdAndName()).thenAnswer(invocation -> {
+            index.put(1L, "Harry Potter");
+            index.put(2L, "Ron Weasley");
+            index.remove(2L);
+            index.put(3L, "Ginny Weasley");
+            index.put(1L, "Harry James Potter");
+            return Stream.of(new Object[]{1L, "Harry Potter"}, new Object[]{2L, "Ron Weasley"});
+        });
+
+        index.seed();
+
+        assertThat(index.search("weasley", 10)).containsExactly(3L);
+        assertThat(index.search("james", 10)).containsExactly(1L);
+    }
+
+    @Test
+    void changesDuringRebuildAreReplayedTest() {
+        when(studentRepository.streamIdAndName()).thenReturn(Stream.of(
+                new Object[]{1L, "Harry Potter"}, new Object[]{2L, "Ron Weasley"}));
+        index.seed();
+        when(studentRepository.streamIdAndName()).thenAnswer(invocation -> {
+            index.put(2L, "Ronald Weasley");
+            index.put(4L, "Fred Weasley");
+            index.remove(1L);
+            return Stream.of(new Object[]{1L, "Harry Potter"}, new Object[]{2L, "Ron Weasley"});
+        });
+
+        index.rebuild();
+
+        assertThat(index.search("potter", 10)).isEmpty();
+        assertThat(index.search("ronald", 10)).containsExactly(2L);
+        assertThat(index.search("weasley", 10)).containsExactly(2L, 4L);
+    }
+
+    @Test
+    void tokenisationFoldsCaseMarksAndPunctuationTest() {
+        seed(new Object[]{1L, "Zoë Šmíd"}, new Object[]{2L, "Seamus O'Flaherty-Finnigan"});
+
+        assertThat(index.search("ZOE smid", 10)).containsExactly(1L);
+        assertThat(index.search("flaherty", 10)).containsExactly(2L);
+        assertThat(index.search("o finnigan", 10)).containsExactly(2L);
+        assertThat(index.search("  ,.- ", 10)).isEmpty();
+    }
+
+    @Test
+    void exactTokenRanksAbovePrefixTest() {
+        seed(new Object[]{1L, "Ronald Weasley"}, new Object[]{2L, "Ron Weasley"}, new Object[]{3L, "Harry Potter"});
+
+        assertThat(index.search("ron", 10)).containsExactly(2L, 1L);
+        assertThat(index.search("ron wea", 10)).containsExactly(2L, 1L);
+        assertThat(index.search("ron", 1)).containsExactly(2L);
+        assertThat(index.search("ron potter", 10)).isEmpty();
+    }
+
+    @Test
+    void prefixKeepsMostSharedTokensTest() {
+        Object[][] rows = LongStream.range(0, 305)
+                .mapToObj(id -> new Object[]{id, String.format("aa%03d", id)})
+                .toArray(Object[][]::new);
+        seed(rows);
+        for (long id = 1000; id < 1003; id++) {
+            index.put(id, "Azkaban");
+        }
+
+        assertThat(index.search("a", 400)).hasSize(258).contains(1000L, 1001L, 1002L);
+        assertThat(index.search("aa304", 1)).containsExactly(304L);
+    }
+
+    @Test
+    void fuzzyMatchCountsTranspositionAsOneEditTest() {
+        seed(new Object[]{1L, "Harry Potter"}, new Object[]{2L, "Hermione Granger"}, new Object[]{3L, "Neville Longbottom"});
+
+        assertThat(index.search("hrary", 10)).containsExactly(1L);
+        assertThat(index.search("hermoine", 10)).containsExactly(2L);
+        assertThat(index.search("nevlile longbotom", 10)).containsExactly(3L);
+        assertThat(index.search("harry", 10)).containsExactly(1L);
+        assertThat(index.search("hxrxy", 10)).isEmpty();
+        assertThat(index.search("hr", 10)).isEmpty();
+    }
+
+    @Test
+    void fuzzyMatchSurvivesCommonTrigramsTest() {
+        Object[][] rows = LongStream.range(2, 3002)
+                .mapToObj(id -> new Object[]{id, "ha" + id})
+                .toArray(Object[][]::new);
+        seed(rows);
+        index.put(1L, "Harry Potter");
+
+        assertThat(index.search("harrt", 10)).containsExactly(1L);
+        assertThat(index.search("ha2999", 1)).containsExactly(2999L);
+    }
+
+    private void seed(Object[]... rows) {
+        when(studentRepository.streamIdAndName()).thenReturn(Stream.of(rows));
+        index.seed();
+    }
+}
@@ -0,0 +1,77 @@
+package ru.hogwarts.school.mockmvc;
+
+import org.junit.jupiter.api.Test;
+import ru.hogwarts.school.dto.StudentAgeStatistics;
+import ru.hogwarts.school.repository.StudentRepository;
+import ru.hogwarts.school.services.StudentStatistics;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class StudentStatisticsTest {
+    StudentRepository studentRepository = mock(StudentRepository.class);
+    StudentStatistics statistics = new StudentStatistics(studentRepository);
+
+    @Test
+    void addRemoveUpdateTest() {
+        statistics.added(11);
+        statistics.added(11);
+        statistics.added(17);
+        statistics.changed(11, 12);
+        statistics.changed(12, 12);
+        statistics.removed(17);
+
+        StudentAgeStatistics snapshot = statistics.snapshot();
+        assertThat(snapshot.getCount()).isEqualTo(2);
+        assertThat(snapshot.getAverageAge()).isEqualTo(11.5);
+        assertThat(snapshot.getMinAge()).isEqualTo(11);
+        assertThat(snapshot.getMaxAge()).isEqualTo(12);
+        assertThat(snapshot.getHistogram()).isEqualTo(Map.of(11, 1L, 12, 1L));
+
+        statistics.removed(11);
+        statistics.removed(12);
+        assertThat(statistics.getCount()).isZero();
+        assertThat(statistics.getAverageAge()).isNull();
+        assertThat(statistics.snapshot().getHistogram()).isEmpty();
+    }
+
+    @Test
+    void reconcileReplacesDriftTest() {
+        statistics.added(30);
+        when(studentRepository.countByAge()).thenReturn(List.of(new Object[]{11, 2L}, new Object[]{13, 1L}));
+
+        statistics.reconcile();
+
+        assertThat(statistics.getCount()).isEqualTo(3);
+        assertThat(statistics.getAverageAge()).isEqualTo(35 / 3.0);
+        assertThat(statistics.snapshot().getHistogram()).isEqualTo(Map.of(11, 2L, 13, 1L));
+    }
+
+    @Test
+    void changesDuringReconcileAreAppliedToTheScanTest() {
+        when(studentRepository.countByAge()).thenAnswer(invocation -> {
+            statistics.added(14);
+            return List.<Object[]>of(new Object[]{11, 2L});
+        });
+
+        statistics.seed();
+
+        assertThat(statistics.getCount()).isEqualTo(3);
+        assertThat(statistics.snapshot().getHistogram()).isEqualTo(Map.of(11, 2L, 14, 1L));
+
+        when(studentRepository.countByAge()).thenAnswer(invocation -> {
+            statistics.added(15);
+            statistics.removed(11);
+            return List.<Object[]>of(new Object[]{11, 5L});
+        });
+        statistics.reconcile();
+
+        assertThat(statistics.getCount()).isEqualTo(5);
+        assertThat(statistics.getAverageAge()).isEqualTo((11 * 4 + 15) / 5.0);
+        assertThat(statistics.snapshot().getHistogram()).isEqualTo(Map.of(11, 4L, 15, 1L));
+    }
+}
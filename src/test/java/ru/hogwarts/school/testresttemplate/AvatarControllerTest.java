@@ -0,0 +1,287 @@
+package ru.hogwarts.school.testresttemplate;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.multipart.MultipartFile;
+import ru.hogwarts.school.SchoolApplication;
+import ru.hogwarts.school.dto.AvatarUploadResult;
+import ru.hogwarts.school.model.Avatar;
+import ru.hogwarts.school.model.AvatarContent;
+import ru.hogwarts.school.model.Student;
+import ru.hogwarts.school.repository.AvatarContentRepository;
+import ru.hogwarts.school.repository.AvatarRepository;
+import ru.hogwarts.school.repository.AvatarVariantRepository;
+import ru.hogwarts.school.repository.StudentRepository;
+import ru.hogwarts.school.services.AvatarService;
+import ru.hogwarts.school.storage.AvatarStorage;
+
+import javax.persistence.EntityManagerFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+@SpringBootTest(classes = SchoolApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "path.to.avatars.folder=${java.io.tmpdir}/hogwarts-avatar-test")
+public class AvatarControllerTest {
+    @Autowired
+    TestRestTemplate template;
+    @Autowired
+    AvatarService avatarService;
+    @Autowired
+    AvatarRepository avatarRepository;
+    @Autowired
+    AvatarContentRepository avatarContentRepository;
+    @Autowired
+    AvatarVariantRepository avatarVariantRepository;
+    @Autowired
+    StudentRepository studentRepository;
+    @Autowired
+    AvatarStorage avatarStorage;
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+    @Value("${path.to.avatars.folder}")
+    Path avatarPath;
+
+    @AfterEach
+    void clearDB() {
+        avatarVariantRepository.deleteAll();
+        avatarRepository.deleteAll();
+        avatarContentRepository.deleteAll();
+        studentRepository.deleteAll();
+    }
+
+    @Test
+    void legacyAvatarMigrationTest() throws Exception {
+        Student harry = studentRepository.save(new Student(null, "Harry", 11));
+        Student ron = studentRepository.save(new Student(null, "Ron", 11));
+        Files.createDirectories(avatarPath);
+        Path legacyFile = avatarPath.resolve(harry.getId() + ".png");
+        Files.write(legacyFile, "legacy-avatar".getBytes(StandardCharsets.US_ASCII));
+
+        Avatar legacy = legacyAvatar(harry, legacyFile);
+        Avatar missing = legacyAvatar(ron, avatarPath.resolve(ron.getId() + ".png"));
+
+        ResponseEntity<byte[]> before = template.getForEntity("/avatar/" + missing.getId(), byte[].class);
+        assertThat(before.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+
+        avatarService.migrateLegacyAvatars();
+
+        ResponseEntity<byte[]> migrated = template.getForEntity("/avatar/" + legacy.getId(), byte[].class);
+        assertThat(migrated.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(new String(migrated.getBody(), StandardCharsets.US_ASCII)).isEqualTo("legacy-avatar");
+        assertThat(migrated.getHeaders().getETag()).hasSize(66);
+        assertThat(legacyFile).doesNotExist();
+        assertThat(avatarRepository.findById(legacy.getId()).orElseThrow().getChecksum()).isNotNull();
+
+        ResponseEntity<byte[]> unavailable = template.getForEntity("/avatar/" + missing.getId(), byte[].class);
+        assertThat(unavailable.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    void streamingUploadTest() throws Exception {
+        Student student = studentRepository.save(new Student(null, "Hermione", 12));
+        byte[] bytes = new byte[300 * 1024 + 7];
+        new Random(42).nextBytes(bytes);
+        MockMultipartFile file = spy(new MockMultipartFile("avatar", "hermione.png", "image/png", bytes));
+
+        Long avatarId = avatarService.save(student.getId(), file);
+
+        verify(file, never()).getBytes();
+        Avatar avatar = avatarRepository.findById(avatarId).orElseThrow();
+        assertThat(avatar.getFileSize()).isEqualTo(bytes.length);
+        assertThat(avatar.getChecksum()).isEqualTo(sha256(bytes));
+        try (Stream<Path> files = Files.walk(avatarPath)) {
+            assertThat(files.filter(path -> path.toString().endsWith(".upload"))).isEmpty();
+        }
+
+        ResponseEntity<byte[]> response = template.getForEntity("/avatar/" + avatarId, byte[].class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody()).isEqualTo(bytes);
+    }
+
+    @Test
+    void sharedContentRefCountTest() throws Exception {
+        Student harry = studentRepository.save(new Student(null, "Harry", 11));
+        Student ron = studentRepository.save(new Student(null, "Ron", 11));
+        byte[] shared = randomBytes(100 * 1024, 1);
+        String hash = sha256(shared);
+
+        Long harryAvatar = avatarService.save(harry.getId(), upload(shared));
+        Long ronAvatar = avatarService.save(ron.getId(), upload(shared));
+
+        assertThat(avatarContentRepository.findAll()).hasSize(1);
+        assertThat(avatarContentRepository.findByHash(hash).orElseThrow().getRefCount()).isEqualTo(2);
+        assertThat(avatarRepository.findById(harryAvatar).orElseThrow().getFilePath())
+                .isEqualTo(avatarRepository.findById(ronAvatar).orElseThrow().getFilePath());
+        assertThat(avatarStorage.contains(hash)).isTrue();
+
+        avatarService.save(harry.getId(), upload(randomBytes(100 * 1024, 2)));
+        assertThat(avatarContentRepository.findByHash(hash).orElseThrow().getRefCount()).isEqualTo(1);
+        assertThat(avatarStorage.contains(hash)).isTrue();
+
+        avatarService.save(ron.getId(), upload(randomBytes(100 * 1024, 3)));
+        assertThat(avatarContentRepository.findByHash(hash)).isEmpty();
+        assertThat(avatarStorage.contains(hash)).isFalse();
+        assertThat(avatarContentRepository.findAll()).extracting(AvatarContent::getRefCount).containsOnly(1);
+    }
+
+    @Test
+    void rolledBackUploadDiscardsBlobTest() throws Exception {
+        byte[] bytes = randomBytes(100 * 1024, 4);
+        String hash = sha256(bytes);
+
+        assertThatThrownBy(() -> avatarService.save(Long.MAX_VALUE, upload(bytes))).isInstanceOf(RuntimeException.class);
+
+        assertThat(avatarContentRepository.findAll()).isEmpty();
+        assertThat(avatarStorage.contains(hash)).isFalse();
+    }
+
+    @Test
+    void concurrentSaveAndReadTest() throws Exception {
+        Student student = studentRepository.save(new Student(null, "Neville", 11));
+        Long avatarId = avatarService.save(student.getId(), upload(randomBytes(1024, 0)));
+        AtomicBoolean saving = new AtomicBoolean(true);
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+        List<Future<?>> reads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            reads.add(readers.submit(() -> {
+                while (saving.get()) {
+                    avatarService.getCached(avatarId, null);
+                }
+            }));
+        }
+        byte[] last = null;
+        try {
+            for (int version = 1; version <= 30; version++) {
+                last = randomBytes(1024, version);
+                avatarService.save(student.getId(), upload(last));
+            }
+        } finally {
+            saving.set(false);
+            readers.shutdown();
+        }
+        for (Future<?> read : reads) {
+            read.get(10, TimeUnit.SECONDS);
+        }
+
+        assertThat(avatarService.getCached(avatarId, null).getData()).isEqualTo(last);
+    }
+
+    @Test
+    void batchKeepsLastPartPerStudentTest() throws Exception {
+        Student luna = studentRepository.save(new Student(null, "Luna", 11));
+        byte[] first = randomBytes(100 * 1024, 5);
+        byte[] second = randomBytes(100 * 1024, 6);
+        byte[] orphan = randomBytes(100 * 1024, 7);
+        MultiValueMap<String, MultipartFile> parts = new LinkedMultiValueMap<>();
+        parts.add(String.valueOf(luna.getId()), upload(first));
+        parts.add(String.valueOf(luna.getId()), upload(second));
+        parts.add(String.valueOf(Long.MAX_VALUE), upload(orphan));
+
+        List<AvatarUploadResult> results = avatarService.saveBatch(parts);
+
+        assertThat(results).hasSize(3);
+        assertThat(results.get(0).isSuccess()).isTrue();
+        assertThat(results.get(1).isSuccess()).isTrue();
+        assertThat(results.get(0).getAvatarId()).isEqualTo(results.get(1).getAvatarId());
+        assertThat(results.get(2).isSuccess()).isFalse();
+        assertThat(avatarRepository.findById(results.get(1).getAvatarId()).orElseThrow().getChecksum())
+                .isEqualTo(sha256(second));
+        assertThat(avatarContentRepository.findAll()).hasSize(1);
+        assertThat(avatarStorage.contains(sha256(second))).isTrue();
+        assertThat(avatarStorage.contains(sha256(first))).isFalse();
+        assertThat(avatarStorage.contains(sha256(orphan))).isFalse();
+    }
+
+    @Test
+    void conditionalGetFromCacheTest() throws Exception {
+        Student student = studentRepository.save(new Student(null, "Ginny", 10));
+        Long inline = avatarService.save(student.getId(), upload(randomBytes(1024, 8)));
+        Student other = studentRepository.save(new Student(null, "Percy", 15));
+        Long stored = avatarService.save(other.getId(), upload(randomBytes(100 * 1024, 9)));
+        awaitThumbnails(inline);
+        awaitThumbnails(stored);
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        for (Long avatarId : List.of(inline, stored)) {
+            ResponseEntity<byte[]> first = template.getForEntity("/avatar/" + avatarId, byte[].class);
+            assertThat(first.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+            statistics.clear();
+            HttpHeaders headers = new HttpHeaders();
+            headers.setIfNoneMatch(first.getHeaders().getETag());
+            ResponseEntity<byte[]> conditional = template.exchange("/avatar/" + avatarId, HttpMethod.GET,
+                    new HttpEntity<>(headers), byte[].class);
+
+            assertThat(conditional.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+            assertThat(statistics.getPrepareStatementCount()).isZero();
+        }
+    }
+
+    private void awaitThumbnails(Long avatarId) throws InterruptedException {
+        for (int attempt = 0; attempt < 100; attempt++) {
+            Avatar avatar = avatarRepository.findById(avatarId).orElseThrow();
+            if (avatar.getChecksum().equals(avatar.getThumbnailChecksum())) {
+                return;
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    private static MockMultipartFile upload(byte[] bytes) {
+        return new MockMultipartFile("avatar", "avatar.png", "image/png", bytes);
+    }
+
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static String sha256(byte[] bytes) throws Exception {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private Avatar legacyAvatar(Student student, Path file) {
+        Avatar avatar = new Avatar();
+        avatar.setStudent(student);
+        avatar.setMediaType("image/png");
+        avatar.setFileSize(13);
+        avatar.setFilePath(file.toAbsolutePath().toString());
+        return avatarRepository.save(avatar);
+    }
+}
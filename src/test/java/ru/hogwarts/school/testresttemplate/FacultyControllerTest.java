@@ -122,6 +122,9 @@ public class FacultyControllerTest {
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
         assertThat(response.getBody()).isNotNull();
         assertThat(response.getBody().size()).isEqualTo(1);
+
+        ResponseEntity<Collection> folded = template.getForEntity("/faculty/color/gREEN", Collection.class);
+        assertThat(folded.getBody()).hasSize(1);
     }
 
     @Test
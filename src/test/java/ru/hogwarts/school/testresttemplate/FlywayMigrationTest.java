@@ -0,0 +1,98 @@
+package ru.hogwarts.school.testresttemplate;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Testcontainers(disabledWithoutDocker = true)
+public class FlywayMigrationTest {
+    @Container
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:14-alpine");
+
+    @Test
+    void legacyIdentityAndSerialIdsMoveToPooledSequencesTest() throws SQLException {
+        migrateLegacy("pooled_ids",
+                "CREATE TABLE faculty (id bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, "
+                        + "name varchar(255), color varchar(255))",
+                "CREATE TABLE student (id bigserial PRIMARY KEY, name varchar(255), "
+                        + "age integer NOT NULL, faculty_id bigint REFERENCES faculty)",
+                "INSERT INTO faculty (name, color) VALUES ('Gryffindor', 'Red'), ('Slytherin', 'Green')",
+                "INSERT INTO student (id, name, age, faculty_id) VALUES (7, 'Harry', 11, 1), (42, 'Ron', 11, 1)");
+
+        try (Connection connection = connect("pooled_ids"); Statement statement = connection.createStatement()) {
+            assertThat(queryLong(statement, "SELECT count(*) FROM information_schema.columns "
+                    + "WHERE table_name IN ('faculty', 'student') AND column_name = 'id' "
+                    + "AND (is_identity = 'YES' OR column_default IS NOT NULL)")).isEqualTo(0L);
+            assertThat(queryLong(statement, "SELECT count(*) FROM pg_class "
+                    + "WHERE relname IN ('faculty_id_seq', 'student_id_seq')")).isEqualTo(0L);
+            assertThat(queryLong(statement, "SELECT nextval('faculty_seq')")).isEqualTo(12L);
+            assertThat(queryLong(statement, "SELECT nextval('student_seq')")).isEqualTo(92L);
+            assertThat(queryLong(statement, "SELECT nextval('avatar_seq')")).isEqualTo(1L);
+            assertThat(queryLong(statement, "SELECT count(*) FROM faculty "
+                    + "WHERE name_key = lower(name) AND color_key = lower(color)")).isEqualTo(2L);
+            assertThat(queryLong(statement, "SELECT count(*) FROM pg_indexes WHERE tablename = 'faculty' "
+                    + "AND indexname IN ('faculty_name_key_idx', 'faculty_color_key_idx')")).isEqualTo(2L);
+            statement.execute("INSERT INTO faculty (id, name, color) VALUES (nextval('faculty_seq'), 'Hufflepuff', 'Yellow')");
+            assertThat(queryLong(statement, "SELECT max(id) FROM faculty")).isEqualTo(22L);
+        }
+    }
+
+    @Test
+    void avatarsCanShareContentAfterMigrationTest() throws SQLException {
+        migrateLegacy("shared_content",
+                "CREATE TABLE avatar_content (id bigserial PRIMARY KEY, data bytea)",
+                "CREATE TABLE avatar (id bigserial PRIMARY KEY, content_id bigint UNIQUE REFERENCES avatar_content)",
+                "CREATE UNIQUE INDEX avatar_content_id_idx ON avatar (content_id)",
+                "INSERT INTO avatar_content (id) VALUES (1)",
+                "INSERT INTO avatar (id, content_id) VALUES (1, 1)");
+
+        try (Connection connection = connect("shared_content"); Statement statement = connection.createStatement()) {
+            statement.execute("INSERT INTO avatar (id, content_id) VALUES (2, 1)");
+            assertThat(queryLong(statement, "SELECT count(*) FROM avatar WHERE content_id = 1")).isEqualTo(2L);
+        }
+    }
+
+    private static void migrateLegacy(String database, String... statements) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(postgres.getJdbcUrl(), postgres.getUsername(),
+                postgres.getPassword()); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE DATABASE " + database);
+        }
+        try (Connection connection = connect(database); Statement statement = connection.createStatement()) {
+            for (String sql : statements) {
+                statement.execute(sql);
+            }
+        }
+        Flyway.configure()
+                .dataSource(url(database), postgres.getUsername(), postgres.getPassword())
+                .baselineOnMigrate(true)
+                .baselineVersion("0")
+                .load()
+                .migrate();
+    }
+
+    private static Connection connect(String database) throws SQLException {
+        return DriverManager.getConnection(url(database), postgres.getUsername(), postgres.getPassword());
+    }
+
+    private static String url(String database) {
+        return "jdbc:postgresql://" + postgres.getHost() + ":" + postgres.getMappedPort(PostgreSQLContainer.POSTGRESQL_PORT)
+                + "/" + database;
+    }
+
+    private static long queryLong(Statement statement, String sql) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery(sql)) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package ru.hogwarts.school.testresttemplate;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -14,6 +16,7 @@ import ru.hogwarts.school.model.Student;
 import ru.hogwarts.school.repository.FacultyRepository;
 import ru.hogwarts.school.repository.StudentRepository;
 
+import javax.persistence.EntityManagerFactory;
 import java.util.*;
 
 import static org.assertj.core.api.Assertions.*;
@@ -30,6 +33,8 @@ public class StudentControllerTest {
     FacultyRepository facultyRepository;
     @Autowired
     StudentRepository studentRepository;
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
 
     @BeforeEach
     void setUp() {
@@ -190,8 +195,68 @@ public class StudentControllerTest {
         assertThat(response.getBody()[3].getName()).isEqualTo("Malfoi");
         assertThat(response.getBody()[4].getName()).isEqualTo("Snape");
 
+        ResponseEntity<Student[]> recent = template.getForEntity("/student/recent?n=7", Student[].class);
+        assertThat(recent.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(recent.getBody()).extracting(Student::getName)
+                .containsExactly("Bob", "Samanta", "Greg", "Malfoi", "Snape", "Germiona", "Ron");
     }
 
+    @Test
+    void studentEndpointsFetchFacultyInOneQueryTest() {
+        Faculty gryffindor = facultyRepository.save(new Faculty(null, "Gryffindor", "Red"));
+        Faculty ravenclaw = facultyRepository.save(new Faculty(null, "Ravenclaw", "Blue"));
+        Long harryId = null;
+        for (String name : List.of("Harry", "Ron", "Luna")) {
+            Student student = new Student(null, name, 11);
+            student.setFaculty(name.equals("Luna") ? ravenclaw : gryffindor);
+            student = studentRepository.save(student);
+            if (name.equals("Harry")) {
+                harryId = student.getId();
+            }
+        }
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        statistics.clear();
+        ResponseEntity<Student[]> all = template.getForEntity("/student", Student[].class);
+        assertThat(all.getBody()).hasSize(5);
+        assertThat(all.getBody()).filteredOn(student -> student.getFaculty() != null).hasSize(3);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+
+        statistics.clear();
+        ResponseEntity<Student[]> byAge = template.getForEntity("/student/age/11", Student[].class);
+        assertThat(byAge.getBody()).extracting(student -> student.getFaculty().getName())
+                .containsExactlyInAnyOrder("Gryffindor", "Gryffindor", "Ravenclaw");
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+
+        statistics.clear();
+        ResponseEntity<Student[]> byFaculty = template.getForEntity("/student/by-faculty?id=" + gryffindor.getId(), Student[].class);
+        assertThat(byFaculty.getBody()).extracting(Student::getName).containsExactlyInAnyOrder("Harry", "Ron");
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+
+        statistics.clear();
+        ResponseEntity<Faculty> faculty = template.getForEntity("/faculty/by-student?id=" + harryId, Faculty.class);
+        assertThat(faculty.getBody().getName()).isEqualTo("Gryffindor");
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
 
-}
+    @Test
+    void searchStudentsTest() {
+        createStudent("Hermione Granger", 17);
+        createStudent("Harry Potter", 17);
+        createStudent("Hermes Grant", 40);
 
+        ResponseEntity<Student[]> prefix = template.getForEntity("/student/search?query=herm", Student[].class);
+        assertThat(prefix.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(prefix.getBody()).extracting(Student::getName)
+                .containsExactlyInAnyOrder("Hermione Granger", "Hermes Grant");
+
+        ResponseEntity<Student[]> typo = template.getForEntity("/student/search?query=hermoine", Student[].class);
+        assertThat(typo.getBody()).extracting(Student::getName).containsExactly("Hermione Granger");
+
+        ResponseEntity<Student[]> words = template.getForEntity("/student/search?query=pot har&limit=1", Student[].class);
+        assertThat(words.getBody()).extracting(Student::getName).containsExactly("Harry Potter");
+
+        ResponseEntity<Student[]> exact = template.getForEntity("/student/search?query=Roma", Student[].class);
+        assertThat(exact.getBody()).extracting(Student::getName).first().isEqualTo("Roma");
+    }
+}